@@ -13,7 +13,12 @@
  */
 package android.support.v17.leanback.app;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 
 import android.support.v17.leanback.R;
 import android.animation.Animator;
@@ -23,14 +28,19 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
+import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Handler;
 import android.support.v4.view.animation.FastOutLinearInInterpolator;
 import android.util.Log;
@@ -66,10 +76,17 @@ import android.support.v4.content.ContextCompat;
  * <ul>
  *   <li>the background Drawable of the theme</li>
  *   <li>a solid color (set via {@link #setColor})</li>
- *   <li>two Drawables, previous and current (set via {@link #setBitmap} or
- *   {@link #setDrawable}), which may be in transition</li>
+ *   <li>two Drawables, previous and current (set via {@link #setBitmap},
+ *   {@link #setDrawable} or one of the {@code loadBitmap} methods), which may
+ *   be in transition</li>
  * </ul>
  *
+ * <p>The {@code loadBitmap} methods decode the image on a worker thread, directly
+ * at the size of the background, and are the cheapest way to follow a rapidly
+ * changing selection: only the last of several requests made in quick
+ * succession is decoded, and the bitmaps of backgrounds that have been
+ * replaced are reused for later decodes.
+ *
  * <p>BackgroundManager holds references to potentially large bitmap Drawables.
  * Call {@link #release} to release these references when the Activity is not
  * visible.
@@ -84,7 +101,10 @@ public final class BackgroundManager {
     private static final int FULL_ALPHA = 255;
     private static final int DIM_ALPHA_ON_SOLID = (int) (0.8f * FULL_ALPHA);
     private static final int CHANGE_BG_DELAY_MS = 500;
+    private static final int LOAD_BG_DELAY_MS = 200;
     private static final int FADE_DURATION = 500;
+    private static final int MAX_POOLED_BITMAPS = 2;
+    private static final Bitmap.Config BITMAP_CONFIG = Bitmap.Config.ARGB_8888;
 
     /**
      * Using a separate window for backgrounds can improve graphics performance by
@@ -116,15 +136,24 @@ public final class BackgroundManager {
     private final ValueAnimator mAnimator;
     private final ValueAnimator mDimAnimator;
 
+    private final BitmapPool mBitmapPool = new BitmapPool();
+    private LoadBitmapRunnable mLoadRunnable;
+    private LoadBitmapTask mLoadTask;
+
     private static class BitmapDrawable extends Drawable {
 
         static class ConstantState extends Drawable.ConstantState {
             Bitmap mBitmap;
             Matrix mMatrix;
             Paint mPaint;
+            /** The source the bitmap was loaded from, if it was loaded by the manager. */
+            Object mSource;
+            /** True once another drawable has been created to share the bitmap. */
+            boolean mShared;
 
             @Override
             public Drawable newDrawable() {
+                mShared = true;
                 return new BitmapDrawable(null, mBitmap, mMatrix);
             }
 
@@ -142,9 +171,10 @@ public final class BackgroundManager {
 
         BitmapDrawable(Resources resources, Bitmap bitmap, Matrix matrix) {
             mState.mBitmap = bitmap;
-            mState.mMatrix = matrix != null ? matrix : new Matrix();
+            mState.mMatrix = matrix;
             mState.mPaint = new Paint();
-            mState.mPaint.setFilterBitmap(true);
+            // Only a scaled bitmap needs filtering.
+            mState.mPaint.setFilterBitmap(matrix != null);
         }
 
         Bitmap getBitmap() {
@@ -156,7 +186,11 @@ public final class BackgroundManager {
             if (mState.mBitmap == null) {
                 return;
             }
-            canvas.drawBitmap(mState.mBitmap, mState.mMatrix, mState.mPaint);
+            if (mState.mMatrix == null) {
+                canvas.drawBitmap(mState.mBitmap, 0, 0, mState.mPaint);
+            } else {
+                canvas.drawBitmap(mState.mBitmap, mState.mMatrix, mState.mPaint);
+            }
         }
 
         @Override
@@ -231,6 +265,11 @@ public final class BackgroundManager {
                 if (DEBUG) Log.v(TAG, "animation ended, found change runnable delayMs " + delayMs);
                 mHandler.postDelayed(mChangeRunnable, delayMs);
             }
+            if (mImageOutWrapper != null && mLayerDrawable != null
+                    && recycleBitmap(mImageOutWrapper.getDrawable())) {
+                mLayerDrawable.setDrawableByLayerId(R.id.background_imageout,
+                        createEmptyDrawable());
+            }
             mImageOutWrapper = null;
         }
         @Override
@@ -602,6 +641,8 @@ public final class BackgroundManager {
             mHandler.removeCallbacks(mChangeRunnable);
             mChangeRunnable = null;
         }
+        cancelLoad();
+        mBitmapPool.clear();
         releaseBackgroundBitmap();
     }
 
@@ -678,6 +719,7 @@ public final class BackgroundManager {
      */
     public void setDrawable(Drawable drawable) {
         if (DEBUG) Log.v(TAG, "setBackgroundDrawable " + drawable);
+        cancelLoad();
         setDrawableInternal(drawable);
     }
 
@@ -691,9 +733,13 @@ public final class BackgroundManager {
         if (mChangeRunnable != null) {
             if (sameDrawable(drawable, mChangeRunnable.mDrawable)) {
                 if (DEBUG) Log.v(TAG, "new drawable same as pending");
+                recycleBitmap(drawable);
                 return;
             }
             mHandler.removeCallbacks(mChangeRunnable);
+            Drawable discarded = mChangeRunnable.mDrawable;
+            mChangeRunnable = null;
+            recycleBitmap(discarded);
         }
         mChangeRunnable = new ChangeBackgroundRunnable(drawable);
 
@@ -719,6 +765,7 @@ public final class BackgroundManager {
         if (DEBUG) {
             Log.v(TAG, "setBitmap " + bitmap);
         }
+        cancelLoad();
 
         if (bitmap == null) {
             setDrawableInternal(null);
@@ -762,6 +809,118 @@ public final class BackgroundManager {
         setDrawableInternal(bitmapDrawable);
     }
 
+    /**
+     * Load the image at the given Uri into the background. Unlike
+     * {@link #setBitmap}, the image is decoded on a worker thread, and only the
+     * part of it that is shown is decoded, directly at the size of the
+     * background. The decode starts once no other background has been
+     * requested for a short while, so that only the last of several requests
+     * made in quick succession is decoded. Supported Uris are those of
+     * {@link android.content.ContentResolver#openInputStream}. Passing null
+     * clears the background.
+     *
+     * <p>The decoded bitmap belongs to the BackgroundManager and may be reused
+     * for a later background once it has been replaced.
+     */
+    public void loadBitmap(Uri uri) {
+        if (DEBUG) Log.v(TAG, "loadBitmap " + uri);
+        if (uri == null) {
+            cancelLoad();
+            setDrawableInternal(null);
+            return;
+        }
+        loadBitmapInternal(new BitmapSource(uri, 0, null));
+    }
+
+    /**
+     * Load the given image resource into the background, as described in
+     * {@link #loadBitmap(Uri)}.
+     */
+    public void loadBitmap(int resourceId) {
+        if (DEBUG) Log.v(TAG, "loadBitmap " + resourceId);
+        loadBitmapInternal(new BitmapSource(null, resourceId, null));
+    }
+
+    /**
+     * Load the image read from the given stream into the background, as
+     * described in {@link #loadBitmap(Uri)}. The stream is read on a worker
+     * thread and closed once it has been read, or once the load is superseded
+     * by another background.
+     */
+    public void loadBitmap(InputStream stream) {
+        if (DEBUG) Log.v(TAG, "loadBitmap " + stream);
+        if (stream == null) {
+            throw new IllegalArgumentException("stream must not be null");
+        }
+        loadBitmapInternal(new BitmapSource(null, 0, stream));
+    }
+
+    private void loadBitmapInternal(BitmapSource source) {
+        if (!mAttached) {
+            source.close();
+            throw new IllegalStateException("Must attach before setting background drawable");
+        }
+        if (mLoadRunnable != null) {
+            mHandler.removeCallbacks(mLoadRunnable);
+            if (!mLoadRunnable.mSource.equals(source)) {
+                mLoadRunnable.mSource.close();
+            }
+            mLoadRunnable = null;
+        }
+        if (mLoadTask != null) {
+            if (mLoadTask.mSource.equals(source)) {
+                if (DEBUG) Log.v(TAG, "new source already loading");
+                return;
+            }
+            mLoadTask.cancelLoad();
+            mLoadTask = null;
+        }
+        if (isSource(mBackgroundDrawable, source)
+                || (mChangeRunnable != null && isSource(mChangeRunnable.mDrawable, source))) {
+            if (DEBUG) Log.v(TAG, "new source same as current or pending");
+            return;
+        }
+        mLoadRunnable = new LoadBitmapRunnable(source);
+        mHandler.postDelayed(mLoadRunnable, LOAD_BG_DELAY_MS);
+    }
+
+    private void cancelLoad() {
+        if (mLoadRunnable != null) {
+            mHandler.removeCallbacks(mLoadRunnable);
+            mLoadRunnable.mSource.close();
+            mLoadRunnable = null;
+        }
+        if (mLoadTask != null) {
+            mLoadTask.cancelLoad();
+            mLoadTask = null;
+        }
+    }
+
+    private static boolean isSource(Drawable drawable, BitmapSource source) {
+        return drawable instanceof BitmapDrawable
+                && source.equals(((BitmapDrawable) drawable).mState.mSource);
+    }
+
+    /**
+     * Returns the bitmap of a drawable the manager loaded to the pool, unless
+     * the drawable may still be drawn. Returns true if it did.
+     */
+    private boolean recycleBitmap(Drawable drawable) {
+        if (!(drawable instanceof BitmapDrawable) || drawable == mBackgroundDrawable
+                || (mChangeRunnable != null && drawable == mChangeRunnable.mDrawable)
+                || (mService != null && drawable == mService.getDrawable())) {
+            return false;
+        }
+        BitmapDrawable.ConstantState state = ((BitmapDrawable) drawable).mState;
+        if (state.mSource == null || state.mShared || state.mBitmap == null) {
+            return false;
+        }
+        if (DEBUG) Log.v(TAG, "recycling bitmap of " + state.mSource);
+        mBitmapPool.put(state.mBitmap);
+        state.mBitmap = null;
+        return true;
+    }
+
     private void applyBackgroundChanges() {
         if (!mAttached || mLayerWrapper == null) {
             return;
@@ -820,7 +979,14 @@ public final class BackgroundManager {
             return true;
         }
         if (first instanceof BitmapDrawable && second instanceof BitmapDrawable) {
-            if (((BitmapDrawable) first).getBitmap().sameAs(((BitmapDrawable) second).getBitmap())) {
+            BitmapDrawable.ConstantState firstState = ((BitmapDrawable) first).mState;
+            BitmapDrawable.ConstantState secondState = ((BitmapDrawable) second).mState;
+            if (firstState.mSource != null && secondState.mSource != null) {
+                // Comparing the sources is much cheaper than comparing the pixels.
+                return firstState.mSource.equals(secondState.mSource);
+            }
+            if (firstState.mBitmap != null && secondState.mBitmap != null
+                    && firstState.mBitmap.sameAs(secondState.mBitmap)) {
                 return true;
             }
         }
@@ -848,6 +1014,7 @@ public final class BackgroundManager {
 
             if (sameDrawable(mDrawable, mBackgroundDrawable)) {
                 if (DEBUG) Log.v(TAG, "new drawable same as current");
+                recycleBitmap(mDrawable);
                 return;
             }
 
@@ -873,6 +1040,332 @@ public final class BackgroundManager {
         }
     }
 
+    /**
+     * Source of an image loaded with one of the {@code loadBitmap} methods.
+     */
+    private static class BitmapSource {
+        final Uri mUri;
+        final int mResourceId;
+        final InputStream mStream;
+
+        BitmapSource(Uri uri, int resourceId, InputStream stream) {
+            mUri = uri;
+            mResourceId = resourceId;
+            mStream = stream;
+        }
+
+        InputStream open(Context context) throws IOException {
+            if (mUri != null) {
+                InputStream in = context.getContentResolver().openInputStream(mUri);
+                if (in == null) {
+                    throw new FileNotFoundException("Unable to open " + mUri);
+                }
+                return in;
+            }
+            if (mStream != null) {
+                return mStream;
+            }
+            return context.getResources().openRawResource(mResourceId);
+        }
+
+        void close() {
+            if (mStream != null) {
+                try {
+                    mStream.close();
+                } catch (IOException e) {
+                    /* ignore */
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BitmapSource)) {
+                return false;
+            }
+            BitmapSource other = (BitmapSource) o;
+            return (mUri == null ? other.mUri == null : mUri.equals(other.mUri))
+                    && mResourceId == other.mResourceId && mStream == other.mStream;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mUri != null ? mUri.hashCode() : 0;
+            result = 31 * result + mResourceId;
+            return 31 * result + (mStream != null ? mStream.hashCode() : 0);
+        }
+
+        @Override
+        public String toString() {
+            return mUri != null ? mUri.toString()
+                    : mStream != null ? mStream.toString() : "resource " + mResourceId;
+        }
+    }
+
+    /**
+     * Bitmaps that are no longer drawn, kept to be decoded into by later loads.
+     * Accessed from both the main thread and the worker threads.
+     */
+    private static class BitmapPool {
+        private final ArrayList<Bitmap> mBitmaps = new ArrayList<Bitmap>(MAX_POOLED_BITMAPS);
+
+        synchronized Bitmap get(int width, int height) {
+            for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+                Bitmap bitmap = mBitmaps.get(i);
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                        && bitmap.getConfig() == BITMAP_CONFIG) {
+                    return mBitmaps.remove(i);
+                }
+            }
+            return null;
+        }
+
+        synchronized void put(Bitmap bitmap) {
+            if (bitmap.isRecycled() || !bitmap.isMutable()) {
+                return;
+            }
+            if (mBitmaps.size() >= MAX_POOLED_BITMAPS) {
+                mBitmaps.remove(0).recycle();
+            }
+            mBitmaps.add(bitmap);
+        }
+
+        synchronized void clear() {
+            for (int i = 0; i < mBitmaps.size(); i++) {
+                mBitmaps.get(i).recycle();
+            }
+            mBitmaps.clear();
+        }
+    }
+
+    /**
+     * Task which starts decoding a background once the requests have settled.
+     */
+    class LoadBitmapRunnable implements Runnable {
+        final BitmapSource mSource;
+
+        LoadBitmapRunnable(BitmapSource source) {
+            mSource = source;
+        }
+
+        @Override
+        public void run() {
+            mLoadRunnable = null;
+            mLoadTask = new LoadBitmapTask(mSource);
+            mLoadTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    }
+
+    /**
+     * Task which decodes a background on a worker thread.
+     */
+    private class LoadBitmapTask extends AsyncTask<Void, Void, Bitmap> {
+        final BitmapSource mSource;
+        private final Context mAppContext;
+        private final int mWidth;
+        private final int mHeight;
+        private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+
+        LoadBitmapTask(BitmapSource source) {
+            mSource = source;
+            mAppContext = mContext.getApplicationContext();
+            mWidth = mWidthPx;
+            mHeight = mHeightPx;
+        }
+
+        void cancelLoad() {
+            cancel(false);
+            mOptions.requestCancelDecode();
+        }
+
+        @Override
+        protected Bitmap doInBackground(Void... params) {
+            InputStream in = null;
+            try {
+                in = mSource.open(mAppContext);
+                byte[] data = readFully(in);
+                if (isCancelled()) {
+                    return null;
+                }
+                Bitmap bitmap = decodeBitmap(data, mWidth, mHeight, mOptions, mBitmapPool);
+                if (bitmap == null && !isCancelled()) {
+                    Log.w(TAG, "Unable to decode background " + mSource);
+                }
+                return bitmap;
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to load background " + mSource, e);
+                return null;
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        /* ignore */
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Bitmap bitmap) {
+            if (mLoadTask != this) {
+                onCancelled(bitmap);
+                return;
+            }
+            mLoadTask = null;
+            if (bitmap == null) {
+                return;
+            }
+            if (!mAttached) {
+                mBitmapPool.put(bitmap);
+                return;
+            }
+            if (DEBUG) Log.v(TAG, "loaded " + mSource);
+            BitmapDrawable drawable = new BitmapDrawable(mContext.getResources(), bitmap);
+            drawable.mState.mSource = mSource;
+            setDrawableInternal(drawable);
+        }
+
+        @Override
+        protected void onCancelled(Bitmap bitmap) {
+            if (bitmap == null) {
+                return;
+            }
+            if (mLayerDrawable != null) {
+                mBitmapPool.put(bitmap);
+            } else {
+                // Released; don't hold on to memory.
+                bitmap.recycle();
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 16 * 1024));
+        byte[] buffer = new byte[16 * 1024];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the region of an image of the given size that is shown in the
+     * background once scaled and cropped like {@link #setBitmap} does.
+     */
+    private static Rect getShownRegion(int imageWidth, int imageHeight, int width, int height) {
+        float scale;
+        if (imageWidth * height > width * imageHeight) {
+            scale = (float) height / (float) imageHeight;
+        } else {
+            scale = (float) width / (float) imageWidth;
+        }
+        int subX = Math.min(Math.round(width / scale), imageWidth);
+        int subY = Math.min(Math.round(height / scale), imageHeight);
+        int dx = Math.max(0, (imageWidth - subX) / 2);
+        return new Rect(dx, 0, dx + subX, subY);
+    }
+
+    /**
+     * Returns the largest power of two by which a region can be subsampled
+     * without dropping below the given size.
+     */
+    private static int getSampleSize(int regionWidth, int regionHeight, int width, int height) {
+        int sampleSize = 1;
+        while (regionWidth / (sampleSize * 2) >= width
+                && regionHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Decodes an image into a bitmap of exactly the given size, scaled and
+     * cropped like {@link #setBitmap} does. Only the shown region of the image
+     * is decoded when its format allows, subsampled as much as possible, and
+     * pooled bitmaps are decoded and drawn into when they fit. Returns null if
+     * the decode was cancelled or failed.
+     */
+    private static Bitmap decodeBitmap(byte[] data, int width, int height,
+            BitmapFactory.Options options, BitmapPool pool) throws IOException {
+        BitmapRegionDecoder decoder = null;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+        } catch (IOException e) {
+            // Not a format the region decoder supports; the whole image is decoded.
+        }
+        try {
+            final int imageWidth;
+            final int imageHeight;
+            if (decoder != null) {
+                imageWidth = decoder.getWidth();
+                imageHeight = decoder.getHeight();
+            } else {
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                options.inJustDecodeBounds = false;
+                imageWidth = options.outWidth;
+                imageHeight = options.outHeight;
+            }
+            if (imageWidth <= 0 || imageHeight <= 0) {
+                return null;
+            }
+
+            final Rect region = getShownRegion(imageWidth, imageHeight, width, height);
+            final int sampleSize = getSampleSize(region.width(), region.height(), width, height);
+            if (DEBUG) Log.v(TAG, "decoding " + region + " of " + imageWidth + "x"
+                    + imageHeight + " with sample size " + sampleSize);
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = BITMAP_CONFIG;
+            options.inMutable = true;
+
+            Bitmap decoded;
+            Rect shown = null;
+            if (decoder != null) {
+                options.inBitmap = pool.get(region.width() / sampleSize,
+                        region.height() / sampleSize);
+                try {
+                    decoded = decoder.decodeRegion(region, options);
+                } catch (IllegalArgumentException e) {
+                    // The pooled bitmap can't be decoded into on this platform.
+                    if (options.inBitmap == null) {
+                        throw e;
+                    }
+                    pool.put(options.inBitmap);
+                    options.inBitmap = null;
+                    decoded = decoder.decodeRegion(region, options);
+                }
+                options.inBitmap = null;
+            } else {
+                decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                shown = new Rect(region.left / sampleSize, region.top / sampleSize,
+                        region.right / sampleSize, region.bottom / sampleSize);
+            }
+            if (decoded == null) {
+                return null;
+            }
+            if (shown == null && decoded.getWidth() == width && decoded.getHeight() == height) {
+                return decoded;
+            }
+
+            Bitmap bitmap = pool.get(width, height);
+            if (bitmap == null) {
+                bitmap = Bitmap.createBitmap(width, height, BITMAP_CONFIG);
+            } else {
+                bitmap.eraseColor(Color.TRANSPARENT);
+            }
+            new Canvas(bitmap).drawBitmap(decoded, shown, new Rect(0, 0, width, height),
+                    new Paint(Paint.FILTER_BITMAP_FLAG));
+            pool.put(decoded);
+            return bitmap;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+    }
+
     private Drawable createEmptyDrawable() {
         Bitmap bitmap = null;
         return new BitmapDrawable(mContext.getResources(), bitmap);
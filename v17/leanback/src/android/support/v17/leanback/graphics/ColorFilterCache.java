@@ -13,51 +13,98 @@
  */
 package android.support.v17.leanback.graphics;
 
+import android.content.ComponentCallbacks2;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffColorFilter;
-import android.util.SparseArray;
+import android.support.v4.util.LruCache;
 
 /**
  * Cache of {@link ColorFilter}s for a given color at different alpha levels.
+ * <p>
+ * The filters are created the first time their level is asked for, so a cache
+ * only holds the levels actually used. The caches themselves are kept in a
+ * bounded, least recently used map; a cache that falls out of it keeps working
+ * for whoever still holds it, but a later lookup of its color gets a new one.
  */
 public final class ColorFilterCache {
 
-    private static final SparseArray<ColorFilterCache> sColorToFiltersMap =
-            new SparseArray<ColorFilterCache>();
+    /**
+     * The number of levels of a cache that does not quantize: one per alpha value.
+     */
+    public static final int MAX_LEVEL_COUNT = 0x100;
+
+    private static final int MAX_CACHES = 16;
 
-    private final PorterDuffColorFilter[] mFilters = new PorterDuffColorFilter[0x100];
+    private static final LruCache<Integer, ColorFilterCache> sColorToFiltersMap =
+            new LruCache<Integer, ColorFilterCache>(MAX_CACHES);
+
+    private final int mColor;
+    private final PorterDuffColorFilter[] mFilters;
 
     /**
      * Get a ColorDimmer for a given color.  Only the RGB values are used; the 
      * alpha channel is ignored in color. Subsequent calls to this method
-     * with the same color value will return the same cache.
+     * with the same color value will return the same cache, unless it has been
+     * evicted in the meantime.
      *
      * @param color The color to use for the color filters.
      * @return A cache of ColorFilters at different alpha levels for the color.
      */
     public static ColorFilterCache getColorFilterCache(int color) {
-        final int r = Color.red(color);
-        final int g = Color.green(color);
-        final int b = Color.blue(color);
-        color = Color.rgb(r, g, b);
-        ColorFilterCache filters = sColorToFiltersMap.get(color);
+        return getColorFilterCache(color, MAX_LEVEL_COUNT);
+    }
+
+    /**
+     * Get a ColorDimmer for a given color that quantizes levels to the given
+     * number of evenly spaced steps, so that animating between two levels does
+     * not create a filter for every alpha value in between. Only the RGB values
+     * are used; the alpha channel is ignored in color.
+     *
+     * @param color The color to use for the color filters.
+     * @param levelCount The number of distinct levels, between 2 and
+     *        {@link #MAX_LEVEL_COUNT}. Levels 0 and 1.0 are always included.
+     * @return A cache of ColorFilters at different alpha levels for the color.
+     */
+    public static ColorFilterCache getColorFilterCache(int color, int levelCount) {
+        if (levelCount < 2 || levelCount > MAX_LEVEL_COUNT) {
+            throw new IllegalArgumentException("levelCount must be between 2 and "
+                    + MAX_LEVEL_COUNT + ": " + levelCount);
+        }
+        color = Color.rgb(Color.red(color), Color.green(color), Color.blue(color));
+        // The RGB values and the level count fit in an int together.
+        final Integer key = ((levelCount - 1) << 24) | (color & 0xFFFFFF);
+        ColorFilterCache filters = sColorToFiltersMap.get(key);
         if (filters == null) {
-            filters = new ColorFilterCache(r, g, b);
-            sColorToFiltersMap.put(color, filters);
+            filters = new ColorFilterCache(color, levelCount);
+            sColorToFiltersMap.put(key, filters);
         }
         return filters;
     }
 
-    private ColorFilterCache(int r, int g, int b) {
-        // Pre cache all 256 filter levels
-        for (int i = 0x00; i <= 0xFF; i++) {
-            int color = Color.argb(i, r, g, b);
-            mFilters[i] = new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_ATOP);
+    /**
+     * Releases the caches of colors that are not in use. Call this from
+     * {@link ComponentCallbacks2#onTrimMemory(int)} with the level passed to it.
+     * <p>
+     * From {@code TRIM_MEMORY_RUNNING_LOW} on, the least recently used half of the
+     * caches is dropped. From {@code TRIM_MEMORY_UI_HIDDEN} on, all of them are.
+     *
+     * @param level The trim level reported by the system
+     */
+    public static void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            sColorToFiltersMap.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            sColorToFiltersMap.trimToSize(sColorToFiltersMap.size() / 2);
         }
     }
 
+    private ColorFilterCache(int color, int levelCount) {
+        mColor = color;
+        mFilters = new PorterDuffColorFilter[levelCount];
+    }
+
     /**
      * Returns a ColorFilter for a given alpha level between 0 and 1.0.
      *
@@ -67,8 +114,18 @@ public final class ColorFilterCache {
      */
     public ColorFilter getFilterForLevel(float level) {
         if (level >= 0 && level <= 1.0) {
-            int filterIndex = (int) (0xFF * level);
-            return mFilters[filterIndex];
+            final int steps = mFilters.length - 1;
+            final int filterIndex = steps == 0xFF ? (int) (0xFF * level)
+                    : Math.round(steps * level);
+            PorterDuffColorFilter filter = mFilters[filterIndex];
+            if (filter == null) {
+                final int alpha = steps == 0xFF ? filterIndex
+                        : Math.round(filterIndex * (float) 0xFF / steps);
+                filter = new PorterDuffColorFilter((alpha << 24) | (mColor & 0xFFFFFF),
+                        PorterDuff.Mode.SRC_ATOP);
+                mFilters[filterIndex] = filter;
+            }
+            return filter;
         } else {
             return null;
         }
@@ -13,6 +13,9 @@
  */
 package android.support.v17.leanback.widget;
 
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -24,6 +27,27 @@ import java.util.List;
 public class ArrayObjectAdapter extends ObjectAdapter {
 
     private ArrayList<Object> mItems = new ArrayList<Object>();
+    private final ListUpdateCallback mListUpdateCallback = new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifyItemRangeChanged(position, count, payload);
+        }
+    };
 
     /**
      * Construct an adapter with the given {@link PresenterSelector}.
@@ -176,6 +200,66 @@ public class ArrayObjectAdapter extends ObjectAdapter {
         notifyItemRangeRemoved(0, itemCount);
     }
 
+    /**
+     * Replaces the contents of the adapter with the given list, notifying the
+     * observers of the insertions, removals, moves and changes that turn the
+     * old contents into the new ones, as computed by {@link DiffUtil}. Items
+     * that are the same according to the callback keep their views, so a
+     * refreshed row keeps its selection and scroll position.
+     * <p>
+     * The diff takes time proportional to the size of the lists plus the square
+     * of the number of edits, on the calling thread.
+     *
+     * @param itemList The new contents of the adapter.
+     * @param callback Tells whether two items are the same and whether their
+     *        contents changed. If null, the observers are only told that
+     *        everything changed.
+     */
+    public void setItems(final List itemList, final DiffCallback callback) {
+        if (callback == null) {
+            mItems.clear();
+            mItems.addAll(itemList);
+            notifyChanged();
+            return;
+        }
+        final ArrayList<Object> oldItems = new ArrayList<Object>(mItems);
+
+        DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldItems.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return itemList.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return callback.areItemsTheSame(oldItems.get(oldItemPosition),
+                        itemList.get(newItemPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return callback.areContentsTheSame(oldItems.get(oldItemPosition),
+                        itemList.get(newItemPosition));
+            }
+
+            @Override
+            public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+                return callback.getChangePayload(oldItems.get(oldItemPosition),
+                        itemList.get(newItemPosition));
+            }
+        });
+
+        mItems.clear();
+        mItems.addAll(itemList);
+        // The payloads are computed while dispatching, from the old items.
+        diffResult.dispatchUpdatesTo(mListUpdateCallback);
+    }
+
     /**
      * Gets a read-only view of the list of object of this ArrayObjectAdapter.
      */
@@ -22,21 +22,32 @@ import java.util.HashMap;
 public final class ClassPresenterSelector extends PresenterSelector {
 
     private final HashMap<Class<?>, Presenter> mClassMap = new HashMap<Class<?>, Presenter>();
+    /**
+     * The presenter found for each concrete item class seen so far, null if
+     * none was found, so that the superclasses only have to be walked once.
+     */
+    private final HashMap<Class<?>, Presenter> mResolvedMap = new HashMap<Class<?>, Presenter>();
 
     public void addClassPresenter(Class<?> cls, Presenter presenter) {
         mClassMap.put(cls, presenter);
+        mResolvedMap.clear();
     }
 
     @Override
     public Presenter getPresenter(Object item) {
-        Class<?> cls = item.getClass();
-        Presenter presenter = null;
+        final Class<?> itemClass = item.getClass();
+        Presenter presenter = mResolvedMap.get(itemClass);
+        if (presenter != null || mResolvedMap.containsKey(itemClass)) {
+            return presenter;
+        }
 
+        Class<?> cls = itemClass;
         do {
             presenter = mClassMap.get(cls);
             cls = cls.getSuperclass();
         } while (presenter == null && cls != null);
 
+        mResolvedMap.put(itemClass, presenter);
         return presenter;
     }
 }
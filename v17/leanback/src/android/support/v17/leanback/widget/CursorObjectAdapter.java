@@ -14,17 +14,67 @@
 package android.support.v17.leanback.widget;
 
 import android.database.Cursor;
+import android.os.AsyncTask;
+import android.provider.BaseColumns;
 import android.support.v17.leanback.database.CursorMapper;
-import android.util.LruCache;
+import android.support.v4.util.LongObjectMap;
+import android.support.v4.util.LruCache;
+
+import java.util.Map;
 
 /**
  * An ObjectAdapter implemented with a {@link Cursor}.
+ * <p>
+ * By default rows are converted to objects on demand, on the thread calling
+ * {@link #get(int)}. In windowed mode, enabled by
+ * {@link #setPrefetchDistance(int)}, the rows around the range last passed to
+ * {@link #setVisibleRange(int, int)} are converted ahead of time on a
+ * background thread, the cache of converted objects is sized to hold that
+ * window, and objects converted from a row survive a cursor change if the new
+ * cursor has a row with the same {@link BaseColumns#_ID}.
  */
 public class CursorObjectAdapter extends ObjectAdapter {
     private static final int CACHE_SIZE = 100;
     private Cursor mCursor;
     private CursorMapper mMapper;
-    private final LruCache<Integer, Object> mItemCache = new LruCache<Integer, Object>(CACHE_SIZE);
+    private final LruCache<Integer, CachedItem> mItemCache =
+            new LruCache<Integer, CachedItem>(CACHE_SIZE);
+
+    /**
+     * Guards the cursor and the mapper, which in windowed mode are used by the
+     * prefetch thread as well.
+     */
+    private final Object mCursorLock = new Object();
+    private int mPrefetchDistance;
+    private int mFirstVisible;
+    private int mLastVisible = -1;
+    /** How far the prefetch got in the order of {@link #getPrefetchPosition}. */
+    private int mPrefetchStep;
+    private boolean mPrefetchScheduled;
+    /** Column of the row ids in the cursor, -1 if it has none or not in windowed mode. */
+    private int mIdColumn = -1;
+    /** Objects converted from the previous cursor, by row id, not yet claimed by a row. */
+    private LongObjectMap<Object> mPreviousItems;
+
+    /**
+     * An object converted from a row, with the id of the row.
+     */
+    private static final class CachedItem {
+        final long mId;
+        final Object mItem;
+
+        CachedItem(long id, Object item) {
+            mId = id;
+            mItem = item;
+        }
+    }
+
+    private final Runnable mPrefetchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            prefetch();
+        }
+    };
 
     /**
      * Construct an adapter with the given {@link PresenterSelector}.
@@ -58,12 +108,14 @@ public class CursorObjectAdapter extends ObjectAdapter {
         if (cursor == mCursor) {
             return;
         }
-        if (mCursor != null) {
-            mCursor.close();
+        synchronized (mCursorLock) {
+            if (mCursor != null) {
+                mCursor.close();
+            }
+            setCursorLocked(cursor);
         }
-        mCursor = cursor;
-        mItemCache.trimToSize(0);
         onCursorChanged();
+        schedulePrefetch();
     }
 
     /**
@@ -77,12 +129,36 @@ public class CursorObjectAdapter extends ObjectAdapter {
             return mCursor;
         }
         Cursor oldCursor = mCursor;
-        mCursor = cursor;
-        mItemCache.trimToSize(0);
+        synchronized (mCursorLock) {
+            setCursorLocked(cursor);
+        }
         onCursorChanged();
+        schedulePrefetch();
         return oldCursor;
     }
 
+    private void setCursorLocked(Cursor cursor) {
+        mPreviousItems = null;
+        if (mPrefetchDistance > 0) {
+            // Keep the converted objects to hand them to the rows of the new
+            // cursor that have the same ids.
+            Map<Integer, CachedItem> snapshot = mItemCache.snapshot();
+            for (CachedItem cached : snapshot.values()) {
+                if (cached.mId != NO_ID) {
+                    if (mPreviousItems == null) {
+                        mPreviousItems = new LongObjectMap<Object>(snapshot.size());
+                    }
+                    mPreviousItems.put(cached.mId, cached.mItem);
+                }
+            }
+        }
+        mItemCache.evictAll();
+        mCursor = cursor;
+        mIdColumn = cursor != null && mPrefetchDistance > 0
+                ? cursor.getColumnIndex(BaseColumns._ID) : -1;
+        mPrefetchStep = 0;
+    }
+
     /**
      * Called whenever the cursor changes.
      */
@@ -103,7 +179,9 @@ public class CursorObjectAdapter extends ObjectAdapter {
      */
     public final void setMapper(CursorMapper mapper) {
         boolean changed = mMapper != mapper;
-        mMapper = mapper;
+        synchronized (mCursorLock) {
+            mMapper = mapper;
+        }
 
         if (changed) {
             onMapperChanged();
@@ -125,38 +203,191 @@ public class CursorObjectAdapter extends ObjectAdapter {
         return mMapper;
     }
 
+    /**
+     * Enables windowed mode, converting up to {@code distance} rows before and
+     * after the visible range ahead of time on a background thread, or
+     * disables it if {@code distance} is 0.
+     * <p>
+     * In windowed mode the {@link CursorMapper} is called on the background
+     * thread, though never concurrently with itself or with other uses of the
+     * cursor by the adapter. Objects are reused across cursor changes by row
+     * id, so they must not depend on columns that can change while the id
+     * stays the same.
+     *
+     * @param distance The number of rows to prefetch on each side of the visible range.
+     * @see #setVisibleRange(int, int)
+     */
+    public void setPrefetchDistance(int distance) {
+        if (distance < 0) {
+            throw new IllegalArgumentException("distance must not be negative");
+        }
+        synchronized (mCursorLock) {
+            mPrefetchDistance = distance;
+            mIdColumn = mCursor != null && distance > 0
+                    ? mCursor.getColumnIndex(BaseColumns._ID) : -1;
+            mPreviousItems = null;
+            mPrefetchStep = 0;
+        }
+        resizeCache();
+        schedulePrefetch();
+    }
+
+    /**
+     * Returns the number of rows prefetched on each side of the visible range,
+     * 0 if the adapter is not in windowed mode.
+     */
+    public int getPrefetchDistance() {
+        return mPrefetchDistance;
+    }
+
+    /**
+     * Tells the adapter which positions are currently visible, so that in
+     * windowed mode it can convert the rows around them ahead of time.
+     *
+     * @param firstPosition The first visible position.
+     * @param lastPosition The last visible position.
+     * @see #setPrefetchDistance(int)
+     */
+    public void setVisibleRange(int firstPosition, int lastPosition) {
+        if (lastPosition < firstPosition) {
+            throw new IllegalArgumentException("lastPosition < firstPosition");
+        }
+        synchronized (mCursorLock) {
+            if (firstPosition == mFirstVisible && lastPosition == mLastVisible) {
+                return;
+            }
+            mFirstVisible = firstPosition;
+            mLastVisible = lastPosition;
+            mPrefetchStep = 0;
+        }
+        resizeCache();
+        schedulePrefetch();
+    }
+
+    private void resizeCache() {
+        final int maxSize;
+        synchronized (mCursorLock) {
+            maxSize = mPrefetchDistance > 0
+                    ? Math.max(1, mLastVisible - mFirstVisible + 1 + 2 * mPrefetchDistance)
+                    : CACHE_SIZE;
+        }
+        if (mItemCache.maxSize() != maxSize) {
+            mItemCache.resize(maxSize);
+        }
+    }
+
+    private void schedulePrefetch() {
+        synchronized (mCursorLock) {
+            if (mPrefetchScheduled || mPrefetchDistance <= 0 || mCursor == null
+                    || mMapper == null || mLastVisible < mFirstVisible) {
+                return;
+            }
+            mPrefetchScheduled = true;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(mPrefetchRunnable);
+    }
+
+    /**
+     * Returns the position to prefetch at the given step: first the visible
+     * positions, then alternately one more after and one more before them.
+     * The position may be outside of the cursor.
+     */
+    private int getPrefetchPosition(int step) {
+        final int visibleCount = mLastVisible - mFirstVisible + 1;
+        if (step < visibleCount) {
+            return mFirstVisible + step;
+        }
+        step -= visibleCount;
+        final int offset = step / 2 + 1;
+        return (step & 1) == 0 ? mLastVisible + offset : mFirstVisible - offset;
+    }
+
+    private void prefetch() {
+        while (true) {
+            synchronized (mCursorLock) {
+                int position = -1;
+                if (mPrefetchDistance > 0 && mCursor != null && !mCursor.isClosed()
+                        && mMapper != null) {
+                    final int count = mCursor.getCount();
+                    final int stepCount = mLastVisible - mFirstVisible + 1 + 2 * mPrefetchDistance;
+                    while (position < 0 && mPrefetchStep < stepCount) {
+                        final int candidate = getPrefetchPosition(mPrefetchStep);
+                        mPrefetchStep++;
+                        if (candidate >= 0 && candidate < count
+                                && mItemCache.get(candidate) == null) {
+                            position = candidate;
+                        }
+                    }
+                }
+                if (position < 0 || !mCursor.moveToPosition(position)) {
+                    mPrefetchScheduled = false;
+                    return;
+                }
+                convertLocked(position);
+            }
+        }
+    }
+
+    /**
+     * Converts the row the cursor is at and caches it.
+     */
+    private Object convertLocked(int index) {
+        long id = NO_ID;
+        Object item = null;
+        if (mIdColumn >= 0) {
+            id = mCursor.getLong(mIdColumn);
+            if (mPreviousItems != null) {
+                item = mPreviousItems.remove(id);
+                if (mPreviousItems.isEmpty()) {
+                    mPreviousItems = null;
+                }
+            }
+        }
+        if (item == null) {
+            item = mMapper.convert(mCursor);
+        }
+        mItemCache.put(index, new CachedItem(id, item));
+        return item;
+    }
+
     @Override
     public int size() {
-        if (mCursor == null) {
-            return 0;
+        // getCount() may fill the cursor's window, which the prefetch thread can be doing too.
+        synchronized (mCursorLock) {
+            if (mCursor == null) {
+                return 0;
+            }
+            return mCursor.getCount();
         }
-        return mCursor.getCount();
     }
 
     @Override
     public Object get(int index) {
-        if (mCursor == null) {
-            return null;
+        synchronized (mCursorLock) {
+            if (mCursor == null) {
+                return null;
+            }
+            if (!mCursor.moveToPosition(index)) {
+                throw new ArrayIndexOutOfBoundsException();
+            }
+            CachedItem cached = mItemCache.get(index);
+            if (cached != null) {
+                return cached.mItem;
+            }
+            return convertLocked(index);
         }
-        if (!mCursor.moveToPosition(index)) {
-            throw new ArrayIndexOutOfBoundsException();
-        }
-        Object item = mItemCache.get(index);
-        if (item != null) {
-            return item;
-        }
-        item = mMapper.convert(mCursor);
-        mItemCache.put(index, item);
-        return item;
     }
 
     /**
      * Closes this adapter, closing the backing {@link Cursor} as well.
      */
     public void close() {
-        if (mCursor != null) {
-            mCursor.close();
-            mCursor = null;
+        synchronized (mCursorLock) {
+            if (mCursor != null) {
+                mCursor.close();
+                mCursor = null;
+            }
+            mPreviousItems = null;
         }
     }
 
@@ -164,7 +395,9 @@ public class CursorObjectAdapter extends ObjectAdapter {
      * Checks whether the adapter, and hence the backing {@link Cursor}, is closed.
      */
     public boolean isClosed() {
-        return mCursor == null || mCursor.isClosed();
+        synchronized (mCursorLock) {
+            return mCursor == null || mCursor.isClosed();
+        }
     }
 
     /**
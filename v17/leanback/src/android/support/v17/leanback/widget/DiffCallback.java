@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package android.support.v17.leanback.widget;
+
+/**
+ * Callback that informs {@link ArrayObjectAdapter} how to compute list updates when using
+ * {@link ArrayObjectAdapter#setItems(java.util.List, DiffCallback)}.
+ *
+ * @param <Value> Type of items to compare.
+ */
+public abstract class DiffCallback<Value> {
+
+    /**
+     * Called to decide whether two items represent the same item, for example by comparing
+     * their ids.
+     *
+     * @param oldItem The item in the old list.
+     * @param newItem The item in the new list.
+     * @return True if the two items represent the same object or false if they are different.
+     */
+    public abstract boolean areItemsTheSame(Value oldItem, Value newItem);
+
+    /**
+     * Called to decide whether two items have the same data, that is whether the view bound
+     * to the old item can be kept for the new one. Only called for items for which
+     * {@link #areItemsTheSame} returned true.
+     *
+     * @param oldItem The item in the old list.
+     * @param newItem The item in the new list.
+     * @return True if the contents of the items are the same or false if they are different.
+     */
+    public abstract boolean areContentsTheSame(Value oldItem, Value newItem);
+
+    /**
+     * Called for items for which {@link #areItemsTheSame} returned true and
+     * {@link #areContentsTheSame} returned false, to get a payload describing the change.
+     *
+     * @param oldItem The item in the old list.
+     * @param newItem The item in the new list.
+     * @return A payload object that represents the change between the two items, or null
+     *         to rebind the item fully.
+     */
+    @SuppressWarnings("unused")
+    public Object getChangePayload(Value oldItem, Value newItem) {
+        return null;
+    }
+}
@@ -13,6 +13,7 @@
  */
 package android.support.v17.leanback.widget;
 
+import android.support.v4.util.ObjectIntMap;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.View;
@@ -61,6 +62,12 @@ public class ItemBridgeAdapter extends RecyclerView.Adapter {
     private FocusHighlightHandler mFocusHighlight;
     private AdapterListener mAdapterListener;
     private ArrayList<Presenter> mPresenters = new ArrayList<Presenter>();
+    /**
+     * The view type of each presenter, that is its index in mPresenters. The
+     * list may be shared with other adapters through {@link #setPresenterMapper},
+     * so the index is checked against the list before it is trusted.
+     */
+    private final ObjectIntMap<Presenter> mPresenterTypes = new ObjectIntMap<Presenter>();
 
     final class OnFocusChangeListener implements View.OnFocusChangeListener {
         View.OnFocusChangeListener mChainedListener;
@@ -144,6 +151,10 @@ public class ItemBridgeAdapter extends RecyclerView.Adapter {
             ItemBridgeAdapter.this.notifyItemRangeChanged(positionStart, itemCount);
         }
         @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            ItemBridgeAdapter.this.notifyItemRangeChanged(positionStart, itemCount, payload);
+        }
+        @Override
         public void onItemRangeInserted(int positionStart, int itemCount) {
             ItemBridgeAdapter.this.notifyItemRangeInserted(positionStart, itemCount);
         }
@@ -151,6 +162,10 @@ public class ItemBridgeAdapter extends RecyclerView.Adapter {
         public void onItemRangeRemoved(int positionStart, int itemCount) {
             ItemBridgeAdapter.this.notifyItemRangeRemoved(positionStart, itemCount);
         }
+        @Override
+        public void onItemMoved(int fromPosition, int toPosition) {
+            ItemBridgeAdapter.this.notifyItemMoved(fromPosition, toPosition);
+        }
     };
 
     public ItemBridgeAdapter(ObjectAdapter adapter, PresenterSelector presenterSelector) {
@@ -199,6 +214,7 @@ public class ItemBridgeAdapter extends RecyclerView.Adapter {
 
     public void setPresenterMapper(ArrayList<Presenter> presenters) {
         mPresenters = presenters;
+        mPresenterTypes.clear();
     }
 
     public ArrayList<Presenter> getPresenterMapper() {
@@ -216,7 +232,11 @@ public class ItemBridgeAdapter extends RecyclerView.Adapter {
                 mPresenterSelector : mAdapter.getPresenterSelector();
         Object item = mAdapter.get(position);
         Presenter presenter = presenterSelector.getPresenter(item);
-        int type = mPresenters.indexOf(presenter);
+        int type = mPresenterTypes.get(presenter, -1);
+        if (type >= 0 && type < mPresenters.size() && mPresenters.get(type) == presenter) {
+            return type;
+        }
+        type = mPresenters.indexOf(presenter);
         if (type < 0) {
             mPresenters.add(presenter);
             type = mPresenters.indexOf(presenter);
@@ -226,6 +246,7 @@ public class ItemBridgeAdapter extends RecyclerView.Adapter {
                 mAdapterListener.onAddPresenter(presenter, type);
             }
         }
+        mPresenterTypes.put(presenter, type);
         return type;
     }
 
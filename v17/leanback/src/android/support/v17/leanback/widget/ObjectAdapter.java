@@ -49,6 +49,20 @@ public abstract class ObjectAdapter {
             onChanged();
         }
 
+        /**
+         * Called when a range of items in the ObjectAdapter has changed, with
+         * a payload describing the change. The basic ordering and structure of
+         * the ObjectAdapter has not changed. The default implementation calls
+         * {@link #onItemRangeChanged(int, int)}.
+         *
+         * @param positionStart The position of the first item that changed.
+         * @param itemCount The number of items changed.
+         * @param payload Optional parameter, use null to identify a "full" update.
+         */
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            onItemRangeChanged(positionStart, itemCount);
+        }
+
         /**
          * Called when a range of items is inserted into the ObjectAdapter.
          *
@@ -68,6 +82,16 @@ public abstract class ObjectAdapter {
         public void onItemRangeRemoved(int positionStart, int itemCount) {
             onChanged();
         }
+
+        /**
+         * Called when an item is moved from one position to another.
+         *
+         * @param fromPosition The previous position of the item.
+         * @param toPosition The new position of the item.
+         */
+        public void onItemMoved(int fromPosition, int toPosition) {
+            onChanged();
+        }
     }
 
     private static final class DataObservable extends Observable<DataObserver> {
@@ -84,6 +108,12 @@ public abstract class ObjectAdapter {
             }
         }
 
+        public void notifyItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                mObservers.get(i).onItemRangeChanged(positionStart, itemCount, payload);
+            }
+        }
+
         public void notifyItemRangeInserted(int positionStart, int itemCount) {
             for (int i = mObservers.size() - 1; i >= 0; i--) {
                 mObservers.get(i).onItemRangeInserted(positionStart, itemCount);
@@ -95,6 +125,12 @@ public abstract class ObjectAdapter {
                 mObservers.get(i).onItemRangeRemoved(positionStart, itemCount);
             }
         }
+
+        public void notifyItemMoved(int fromPosition, int toPosition) {
+            for (int i = mObservers.size() - 1; i >= 0; i--) {
+                mObservers.get(i).onItemMoved(fromPosition, toPosition);
+            }
+        }
     }
 
     private final DataObservable mObservable = new DataObservable();
@@ -180,6 +216,10 @@ public abstract class ObjectAdapter {
         mObservable.notifyItemRangeChanged(positionStart, itemCount);
     }
 
+    final protected void notifyItemRangeChanged(int positionStart, int itemCount, Object payload) {
+        mObservable.notifyItemRangeChanged(positionStart, itemCount, payload);
+    }
+
     final protected void notifyItemRangeInserted(int positionStart, int itemCount) {
         mObservable.notifyItemRangeInserted(positionStart, itemCount);
     }
@@ -188,6 +228,10 @@ public abstract class ObjectAdapter {
         mObservable.notifyItemRangeRemoved(positionStart, itemCount);
     }
 
+    final protected void notifyItemMoved(int fromPosition, int toPosition) {
+        mObservable.notifyItemMoved(fromPosition, toPosition);
+    }
+
     final protected void notifyChanged() {
         mObservable.notifyChanged();
     }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v17.leanback.widget;
+
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests {@link ArrayObjectAdapter#setItems}.
+ * @hide
+ */
+public class ArrayObjectAdapterTest extends AndroidTestCase {
+
+    /** An item with an id and a version of its contents. */
+    static class Item {
+        final int mId;
+        final int mVersion;
+
+        Item(int id, int version) {
+            mId = id;
+            mVersion = version;
+        }
+    }
+
+    static final DiffCallback<Item> DIFF_CALLBACK = new DiffCallback<Item>() {
+        @Override
+        public boolean areItemsTheSame(Item oldItem, Item newItem) {
+            return oldItem.mId == newItem.mId;
+        }
+
+        @Override
+        public boolean areContentsTheSame(Item oldItem, Item newItem) {
+            return oldItem.mVersion == newItem.mVersion;
+        }
+
+        @Override
+        public Object getChangePayload(Item oldItem, Item newItem) {
+            return newItem.mVersion;
+        }
+    };
+
+    /**
+     * Applies the notifications it gets to a copy of the adapter's contents,
+     * marking changed items.
+     */
+    static class ShadowObserver extends ObjectAdapter.DataObserver {
+        static final Object CHANGED = new Object();
+        final ArrayList<Object> mItems = new ArrayList<Object>();
+        int mChangedCalls;
+
+        ShadowObserver(ObjectAdapter adapter) {
+            for (int i = 0; i < adapter.size(); i++) {
+                mItems.add(adapter.get(i));
+            }
+        }
+
+        @Override
+        public void onChanged() {
+            fail("setItems with a DiffCallback must not send a full change");
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            for (int i = 0; i < itemCount; i++) {
+                mItems.add(positionStart, null);
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            for (int i = 0; i < itemCount; i++) {
+                mItems.remove(positionStart);
+            }
+        }
+
+        @Override
+        public void onItemMoved(int fromPosition, int toPosition) {
+            mItems.add(toPosition, mItems.remove(fromPosition));
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            assertNotNull(payload);
+            for (int i = 0; i < itemCount; i++) {
+                mItems.set(positionStart + i, CHANGED);
+            }
+        }
+    }
+
+    private static ArrayObjectAdapter createAdapter(Item... items) {
+        ArrayObjectAdapter adapter = new ArrayObjectAdapter();
+        adapter.addAll(0, Arrays.asList(items));
+        return adapter;
+    }
+
+    public void testSetItemsKeepsSameItems() {
+        Item a = new Item(1, 0);
+        Item b = new Item(2, 0);
+        Item c = new Item(3, 0);
+        ArrayObjectAdapter adapter = createAdapter(a, b, c);
+        ShadowObserver observer = new ShadowObserver(adapter);
+        adapter.registerObserver(observer);
+
+        Item d = new Item(4, 0);
+        Item b2 = new Item(2, 1);
+        List<Item> newItems = Arrays.asList(c, d, a, b2);
+        adapter.setItems(newItems, DIFF_CALLBACK);
+
+        assertEquals(newItems.size(), adapter.size());
+        for (int i = 0; i < newItems.size(); i++) {
+            assertSame(newItems.get(i), adapter.get(i));
+        }
+        // The items that did not change were moved, not rebound.
+        assertSame(c, observer.mItems.get(0));
+        assertNull(observer.mItems.get(1));
+        assertSame(a, observer.mItems.get(2));
+        assertSame(ShadowObserver.CHANGED, observer.mItems.get(3));
+    }
+
+    public void testSetItemsRandom() {
+        Random random = new Random(0);
+        for (int round = 0; round < 200; round++) {
+            ArrayObjectAdapter adapter = new ArrayObjectAdapter();
+            for (int id = 0; id < 20; id++) {
+                if (random.nextBoolean()) {
+                    adapter.add(random.nextInt(adapter.size() + 1), new Item(id, 0));
+                }
+            }
+            ShadowObserver observer = new ShadowObserver(adapter);
+            adapter.registerObserver(observer);
+
+            ArrayList<Item> newItems = new ArrayList<Item>();
+            for (int id = 0; id < 20; id++) {
+                if (random.nextBoolean()) {
+                    newItems.add(random.nextInt(newItems.size() + 1),
+                            new Item(id, random.nextInt(2)));
+                }
+            }
+            adapter.setItems(newItems, DIFF_CALLBACK);
+
+            assertEquals(newItems.size(), observer.mItems.size());
+            for (int i = 0; i < newItems.size(); i++) {
+                Object shadow = observer.mItems.get(i);
+                if (shadow != null && shadow != ShadowObserver.CHANGED) {
+                    Item oldItem = (Item) shadow;
+                    assertEquals(newItems.get(i).mId, oldItem.mId);
+                    assertEquals(newItems.get(i).mVersion, oldItem.mVersion);
+                }
+            }
+        }
+    }
+
+    public void testSetItemsWithoutCallback() {
+        ArrayObjectAdapter adapter = createAdapter(new Item(1, 0));
+        final boolean[] changed = new boolean[1];
+        adapter.registerObserver(new ObjectAdapter.DataObserver() {
+            @Override
+            public void onChanged() {
+                changed[0] = true;
+            }
+        });
+        adapter.setItems(Arrays.asList(new Item(2, 0), new Item(3, 0)), null);
+        assertTrue(changed[0]);
+        assertEquals(2, adapter.size());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v17.leanback.widget;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.support.v17.leanback.database.CursorMapper;
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the windowed mode of {@link CursorObjectAdapter}.
+ * @hide
+ */
+public class CursorObjectAdapterTest extends AndroidTestCase {
+
+    private static final long PREFETCH_TIMEOUT_MS = 5000;
+
+    /** An object converted from a row. */
+    static class Item {
+        final long mId;
+
+        Item(long id) {
+            mId = id;
+        }
+    }
+
+    /** Counts the rows it converts, on whichever thread it is called. */
+    static class CountingMapper extends CursorMapper {
+        final AtomicInteger mConvertCount = new AtomicInteger();
+        int mIdColumn;
+
+        @Override
+        protected void bindColumns(Cursor cursor) {
+            mIdColumn = cursor.getColumnIndex(BaseColumns._ID);
+        }
+
+        @Override
+        protected Object bind(Cursor cursor) {
+            mConvertCount.incrementAndGet();
+            return new Item(cursor.getLong(mIdColumn));
+        }
+    }
+
+    CursorObjectAdapter mAdapter;
+    CountingMapper mMapper;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new CursorObjectAdapter();
+        mMapper = new CountingMapper();
+        mAdapter.setMapper(mMapper);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mAdapter.close();
+        super.tearDown();
+    }
+
+    static Cursor createCursor(long firstId, int count) {
+        MatrixCursor cursor = new MatrixCursor(new String[] {BaseColumns._ID});
+        for (int i = 0; i < count; i++) {
+            cursor.addRow(new Object[] {firstId + i});
+        }
+        return cursor;
+    }
+
+    void waitForConvertCount(int count) {
+        final long deadline = SystemClock.uptimeMillis() + PREFETCH_TIMEOUT_MS;
+        while (mMapper.mConvertCount.get() < count && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(10);
+        }
+        assertEquals(count, mMapper.mConvertCount.get());
+    }
+
+    public void testPrefetchesAroundVisibleRange() {
+        mAdapter.changeCursor(createCursor(1000, 100));
+        mAdapter.setPrefetchDistance(5);
+        mAdapter.setVisibleRange(10, 19);
+        // 10 visible rows and 5 on either side
+        waitForConvertCount(20);
+
+        for (int i = 5; i < 25; i++) {
+            assertEquals(1000 + i, ((Item) mAdapter.get(i)).mId);
+        }
+        assertEquals("prefetched rows are not converted again", 20,
+                mMapper.mConvertCount.get());
+
+        mAdapter.get(40);
+        assertEquals(21, mMapper.mConvertCount.get());
+    }
+
+    public void testPrefetchStopsAtCursorEnd() {
+        mAdapter.changeCursor(createCursor(0, 12));
+        mAdapter.setPrefetchDistance(5);
+        mAdapter.setVisibleRange(8, 11);
+        // 4 visible rows, 5 before and none after
+        waitForConvertCount(9);
+        assertEquals(12, mAdapter.size());
+    }
+
+    public void testItemsReusedAcrossCursorSwap() {
+        mAdapter.changeCursor(createCursor(1000, 50));
+        mAdapter.setPrefetchDistance(2);
+        mAdapter.setVisibleRange(0, 9);
+        waitForConvertCount(12);
+        final Object[] items = new Object[10];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = mAdapter.get(i);
+        }
+
+        // New cursor with one row inserted at the front.
+        MatrixCursor cursor = new MatrixCursor(new String[] {BaseColumns._ID});
+        cursor.addRow(new Object[] {1});
+        for (int i = 0; i < 50; i++) {
+            cursor.addRow(new Object[] {1000 + i});
+        }
+        mAdapter.changeCursor(cursor);
+        for (int i = 0; i < items.length; i++) {
+            assertSame(items[i], mAdapter.get(i + 1));
+        }
+        assertEquals(1, ((Item) mAdapter.get(0)).mId);
+    }
+
+    public void testDisabledByDefault() {
+        mAdapter.changeCursor(createCursor(0, 20));
+        mAdapter.setVisibleRange(0, 9);
+        SystemClock.sleep(100);
+        assertEquals(0, mMapper.mConvertCount.get());
+        mAdapter.get(3);
+        assertEquals(1, mMapper.mConvertCount.get());
+    }
+}
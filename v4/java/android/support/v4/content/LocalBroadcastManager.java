@@ -18,7 +18,10 @@ package android.support.v4.content;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
@@ -26,6 +29,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 
@@ -42,16 +46,27 @@ import android.util.Log;
  * <li> It is more efficient than sending a global broadcast through the
  * system.
  * </ul>
+ * <p>
+ * Receivers are delivered to on the main thread unless they were registered
+ * with their own {@link Looper} or {@link Executor}. Frequent broadcasts whose
+ * only interesting content is the latest one, such as progress updates, can be
+ * sent with {@link #sendBroadcastCoalesced} so that receivers which fall
+ * behind only see the most recent of them.
  */
 public class LocalBroadcastManager {
     private static class ReceiverRecord {
         final IntentFilter filter;
         final BroadcastReceiver receiver;
-        boolean broadcasting;
+        final Dispatcher dispatcher;
+        final int sequence;
+        volatile boolean dead;
 
-        ReceiverRecord(IntentFilter _filter, BroadcastReceiver _receiver) {
+        ReceiverRecord(IntentFilter _filter, BroadcastReceiver _receiver,
+                Dispatcher _dispatcher, int _sequence) {
             filter = _filter;
             receiver = _receiver;
+            dispatcher = _dispatcher;
+            sequence = _sequence;
         }
 
         @Override
@@ -67,8 +82,8 @@ public class LocalBroadcastManager {
     }
 
     private static class BroadcastRecord {
-        final Intent intent;
-        final ArrayList<ReceiverRecord> receivers;
+        Intent intent;
+        ArrayList<ReceiverRecord> receivers;
 
         BroadcastRecord(Intent _intent, ArrayList<ReceiverRecord> _receivers) {
             intent = _intent;
@@ -76,22 +91,268 @@ public class LocalBroadcastManager {
         }
     }
 
+    /**
+     * The receivers registered for one action, bucketed by the data their
+     * filters accept so that a broadcast only has to be matched against the
+     * filters that can possibly accept it.
+     */
+    private static class ActionIndex {
+        /** Filters without schemes or types; they only accept intents without data. */
+        final ArrayList<ReceiverRecord> noData = new ArrayList<ReceiverRecord>();
+        /** Filters with schemes, by each of their schemes. */
+        final HashMap<String, ArrayList<ReceiverRecord>> schemes
+                = new HashMap<String, ArrayList<ReceiverRecord>>();
+        /** Filters with types but no schemes, by the part of each type before the '/'. */
+        final HashMap<String, ArrayList<ReceiverRecord>> types
+                = new HashMap<String, ArrayList<ReceiverRecord>>();
+        int size;
+
+        void add(ReceiverRecord record) {
+            final IntentFilter filter = record.filter;
+            if (filter.countDataSchemes() > 0) {
+                for (int i=0; i<filter.countDataSchemes(); i++) {
+                    addToBucket(schemes, filter.getDataScheme(i), record);
+                }
+            } else if (filter.countDataTypes() > 0) {
+                for (int i=0; i<filter.countDataTypes(); i++) {
+                    addToBucket(types, baseType(filter.getDataType(i)), record);
+                }
+            } else {
+                noData.add(record);
+            }
+            size++;
+        }
+
+        void remove(ReceiverRecord record) {
+            if (!removeFromList(noData, record)) {
+                removeFromBuckets(schemes, record);
+                removeFromBuckets(types, record);
+            }
+            size--;
+        }
+
+        boolean hasDataFilters() {
+            return size > noData.size();
+        }
+
+        private static void addToBucket(HashMap<String, ArrayList<ReceiverRecord>> buckets,
+                String key, ReceiverRecord record) {
+            ArrayList<ReceiverRecord> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<ReceiverRecord>(1);
+                buckets.put(key, bucket);
+            } else if (bucket.get(bucket.size() - 1) == record) {
+                // Several types of the filter share a base type.
+                return;
+            }
+            bucket.add(record);
+        }
+
+        private static void removeFromBuckets(HashMap<String, ArrayList<ReceiverRecord>> buckets,
+                ReceiverRecord record) {
+            Iterator<ArrayList<ReceiverRecord>> it = buckets.values().iterator();
+            while (it.hasNext()) {
+                ArrayList<ReceiverRecord> bucket = it.next();
+                if (removeFromList(bucket, record) && bucket.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+
+        private static boolean removeFromList(ArrayList<ReceiverRecord> list,
+                ReceiverRecord record) {
+            for (int i=list.size()-1; i>=0; i--) {
+                if (list.get(i) == record) {
+                    list.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Queues broadcasts for the receivers that share a Looper or Executor and
+     * delivers them in batches on it.
+     */
+    private final class Dispatcher implements Runnable {
+        final Handler handler;
+        final Executor executor;
+        final ArrayList<BroadcastRecord> pending = new ArrayList<BroadcastRecord>();
+        final HashMap<Intent.FilterComparison, BroadcastRecord> coalesced
+                = new HashMap<Intent.FilterComparison, BroadcastRecord>();
+        boolean scheduled;
+        /** Whether a thread is delivering for this Executor, see executePendingBroadcasts. */
+        boolean running;
+        int refCount;
+
+        Dispatcher(Looper looper) {
+            handler = new Handler(looper) {
+
+                @Override
+                public void handleMessage(Message msg) {
+                    switch (msg.what) {
+                        case MSG_EXEC_PENDING_BROADCASTS:
+                            executePendingBroadcasts();
+                            break;
+                        default:
+                            super.handleMessage(msg);
+                    }
+                }
+            };
+            executor = null;
+        }
+
+        Dispatcher(Executor _executor) {
+            handler = null;
+            executor = _executor;
+        }
+
+        void enqueue(Intent intent, ArrayList<ReceiverRecord> receivers, boolean coalesce) {
+            final boolean schedule;
+            synchronized (this) {
+                BroadcastRecord br = null;
+                Intent.FilterComparison key = null;
+                if (coalesce) {
+                    key = new Intent.FilterComparison(intent);
+                    br = coalesced.get(key);
+                }
+                if (br != null) {
+                    br.intent = intent;
+                    br.receivers = receivers;
+                } else {
+                    br = new BroadcastRecord(intent, receivers);
+                    pending.add(br);
+                    if (key != null) {
+                        coalesced.put(key, br);
+                    }
+                }
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (handler != null) {
+                handler.sendEmptyMessage(MSG_EXEC_PENDING_BROADCASTS);
+            } else {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        scheduled = false;
+                    }
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            executePendingBroadcasts();
+        }
+
+        /**
+         * Delivers the pending broadcasts until there are none left. For an
+         * Executor only one thread delivers at a time: if another one already
+         * is, this returns right away and that thread delivers what is pending.
+         */
+        void executePendingBroadcasts() {
+            if (executor != null) {
+                synchronized (this) {
+                    if (running) {
+                        return;
+                    }
+                    running = true;
+                }
+            }
+            BroadcastRecord[] brs = null;
+            int i = 0;
+            int j = 0;
+            try {
+                while (true) {
+                    synchronized (this) {
+                        final int N = pending.size();
+                        if (N <= 0) {
+                            scheduled = false;
+                            running = false;
+                            return;
+                        }
+                        brs = new BroadcastRecord[N];
+                        pending.toArray(brs);
+                        pending.clear();
+                        coalesced.clear();
+                    }
+                    for (i=0; i<brs.length; i++) {
+                        BroadcastRecord br = brs[i];
+                        for (j=0; j<br.receivers.size(); j++) {
+                            ReceiverRecord rec = br.receivers.get(j);
+                            if (!rec.dead) {
+                                rec.receiver.onReceive(mAppContext, br.intent);
+                            }
+                        }
+                    }
+                    brs = null;
+                }
+            } finally {
+                if (brs != null) {
+                    // A receiver threw. Executors may swallow that, so keep the
+                    // rest of the batch and make sure it still gets delivered.
+                    requeue(brs, i, j + 1);
+                }
+            }
+        }
+
+        private void requeue(BroadcastRecord[] brs, int index, int receiverIndex) {
+            final boolean schedule;
+            synchronized (this) {
+                final ArrayList<BroadcastRecord> rest = new ArrayList<BroadcastRecord>();
+                final BroadcastRecord br = brs[index];
+                final int count = br.receivers.size();
+                if (receiverIndex < count) {
+                    rest.add(new BroadcastRecord(br.intent, new ArrayList<ReceiverRecord>(
+                            br.receivers.subList(receiverIndex, count))));
+                }
+                for (int k=index+1; k<brs.length; k++) {
+                    rest.add(brs[k]);
+                }
+                pending.addAll(0, rest);
+                running = false;
+                schedule = !pending.isEmpty();
+                scheduled = schedule;
+            }
+            if (schedule) {
+                schedule();
+            }
+        }
+    }
+
     private static final String TAG = "LocalBroadcastManager";
     private static final boolean DEBUG = false;
 
     private final Context mAppContext;
 
-    private final HashMap<BroadcastReceiver, ArrayList<IntentFilter>> mReceivers
-            = new HashMap<BroadcastReceiver, ArrayList<IntentFilter>>();
-    private final HashMap<String, ArrayList<ReceiverRecord>> mActions
-            = new HashMap<String, ArrayList<ReceiverRecord>>();
+    /**
+     * Guards the registrations. Sending only reads them, so senders on
+     * different threads do not serialize on each other.
+     */
+    private final ReentrantReadWriteLock mRegistryLock = new ReentrantReadWriteLock();
 
-    private final ArrayList<BroadcastRecord> mPendingBroadcasts
-            = new ArrayList<BroadcastRecord>();
+    private final HashMap<BroadcastReceiver, ArrayList<ReceiverRecord>> mReceivers
+            = new HashMap<BroadcastReceiver, ArrayList<ReceiverRecord>>();
+    private final HashMap<String, ActionIndex> mActions
+            = new HashMap<String, ActionIndex>();
 
-    static final int MSG_EXEC_PENDING_BROADCASTS = 1;
+    /** Dispatchers by the Looper or Executor they deliver on. */
+    private final HashMap<Object, Dispatcher> mDispatchers
+            = new HashMap<Object, Dispatcher>();
+    private final Dispatcher mMainDispatcher;
+    private int mNextSequence;
 
-    private final Handler mHandler;
+    static final int MSG_EXEC_PENDING_BROADCASTS = 1;
 
     private static final Object mLock = new Object();
     private static LocalBroadcastManager mInstance;
@@ -107,23 +368,13 @@ public class LocalBroadcastManager {
 
     private LocalBroadcastManager(Context context) {
         mAppContext = context;
-        mHandler = new Handler(context.getMainLooper()) {
-
-            @Override
-            public void handleMessage(Message msg) {
-                switch (msg.what) {
-                    case MSG_EXEC_PENDING_BROADCASTS:
-                        executePendingBroadcasts();
-                        break;
-                    default:
-                        super.handleMessage(msg);
-                }
-            }
-        };
+        mMainDispatcher = new Dispatcher(context.getMainLooper());
+        mDispatchers.put(context.getMainLooper(), mMainDispatcher);
     }
 
     /**
      * Register a receive for any local broadcasts that match the given IntentFilter.
+     * The receiver is called on the main thread.
      *
      * @param receiver The BroadcastReceiver to handle the broadcast.
      * @param filter Selects the Intent broadcasts to be received.
@@ -131,59 +382,132 @@ public class LocalBroadcastManager {
      * @see #unregisterReceiver
      */
     public void registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
-        synchronized (mReceivers) {
-            ReceiverRecord entry = new ReceiverRecord(filter, receiver);
-            ArrayList<IntentFilter> filters = mReceivers.get(receiver);
-            if (filters == null) {
-                filters = new ArrayList<IntentFilter>(1);
-                mReceivers.put(receiver, filters);
+        mRegistryLock.writeLock().lock();
+        try {
+            register(receiver, filter, mMainDispatcher);
+        } finally {
+            mRegistryLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Register a receive for any local broadcasts that match the given IntentFilter,
+     * to be called on the thread of the given Looper.
+     *
+     * @param receiver The BroadcastReceiver to handle the broadcast.
+     * @param filter Selects the Intent broadcasts to be received.
+     * @param looper The Looper whose thread the receiver is called on.
+     *
+     * @see #unregisterReceiver
+     */
+    public void registerReceiver(BroadcastReceiver receiver, IntentFilter filter,
+            Looper looper) {
+        if (looper == null) {
+            throw new IllegalArgumentException("looper must not be null");
+        }
+        mRegistryLock.writeLock().lock();
+        try {
+            Dispatcher dispatcher = mDispatchers.get(looper);
+            if (dispatcher == null) {
+                dispatcher = new Dispatcher(looper);
+                mDispatchers.put(looper, dispatcher);
             }
-            filters.add(filter);
-            for (int i=0; i<filter.countActions(); i++) {
-                String action = filter.getAction(i);
-                ArrayList<ReceiverRecord> entries = mActions.get(action);
-                if (entries == null) {
-                    entries = new ArrayList<ReceiverRecord>(1);
-                    mActions.put(action, entries);
-                }
-                entries.add(entry);
+            register(receiver, filter, dispatcher);
+        } finally {
+            mRegistryLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Register a receive for any local broadcasts that match the given IntentFilter,
+     * to be called by the given Executor. Broadcasts are handed to the Executor in
+     * batches, one task at a time, so the receiver is never called concurrently
+     * with itself even on a thread pool.
+     *
+     * @param receiver The BroadcastReceiver to handle the broadcast.
+     * @param filter Selects the Intent broadcasts to be received.
+     * @param executor The Executor that calls the receiver.
+     *
+     * @see #unregisterReceiver
+     */
+    public void registerReceiver(BroadcastReceiver receiver, IntentFilter filter,
+            Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        mRegistryLock.writeLock().lock();
+        try {
+            Dispatcher dispatcher = mDispatchers.get(executor);
+            if (dispatcher == null) {
+                dispatcher = new Dispatcher(executor);
+                mDispatchers.put(executor, dispatcher);
             }
+            register(receiver, filter, dispatcher);
+        } finally {
+            mRegistryLock.writeLock().unlock();
+        }
+    }
+
+    private void register(BroadcastReceiver receiver, IntentFilter filter,
+            Dispatcher dispatcher) {
+        ReceiverRecord entry = new ReceiverRecord(filter, receiver, dispatcher,
+                mNextSequence++);
+        ArrayList<ReceiverRecord> records = mReceivers.get(receiver);
+        if (records == null) {
+            records = new ArrayList<ReceiverRecord>(1);
+            mReceivers.put(receiver, records);
+        }
+        records.add(entry);
+        dispatcher.refCount++;
+        for (int i=0; i<filter.countActions(); i++) {
+            String action = filter.getAction(i);
+            ActionIndex index = mActions.get(action);
+            if (index == null) {
+                index = new ActionIndex();
+                mActions.put(action, index);
+            }
+            index.add(entry);
         }
     }
 
     /**
      * Unregister a previously registered BroadcastReceiver.  <em>All</em>
      * filters that have been registered for this BroadcastReceiver will be
-     * removed.
+     * removed. Broadcasts still pending for the receiver are not delivered.
      *
      * @param receiver The BroadcastReceiver to unregister.
      *
      * @see #registerReceiver
      */
     public void unregisterReceiver(BroadcastReceiver receiver) {
-        synchronized (mReceivers) {
-            ArrayList<IntentFilter> filters = mReceivers.remove(receiver);
-            if (filters == null) {
+        mRegistryLock.writeLock().lock();
+        try {
+            ArrayList<ReceiverRecord> records = mReceivers.remove(receiver);
+            if (records == null) {
                 return;
             }
-            for (int i=0; i<filters.size(); i++) {
-                IntentFilter filter = filters.get(i);
+            for (int i=0; i<records.size(); i++) {
+                ReceiverRecord record = records.get(i);
+                record.dead = true;
+                IntentFilter filter = record.filter;
                 for (int j=0; j<filter.countActions(); j++) {
                     String action = filter.getAction(j);
-                    ArrayList<ReceiverRecord> receivers = mActions.get(action);
-                    if (receivers != null) {
-                        for (int k=0; k<receivers.size(); k++) {
-                            if (receivers.get(k).receiver == receiver) {
-                                receivers.remove(k);
-                                k--;
-                            }
-                        }
-                        if (receivers.size() <= 0) {
+                    ActionIndex index = mActions.get(action);
+                    if (index != null) {
+                        index.remove(record);
+                        if (index.size <= 0) {
                             mActions.remove(action);
                         }
                     }
                 }
+                Dispatcher dispatcher = record.dispatcher;
+                if (--dispatcher.refCount <= 0 && dispatcher != mMainDispatcher) {
+                    mDispatchers.remove(dispatcher.handler != null
+                            ? dispatcher.handler.getLooper() : dispatcher.executor);
+                }
             }
+        } finally {
+            mRegistryLock.writeLock().unlock();
         }
     }
 
@@ -198,104 +522,207 @@ public class LocalBroadcastManager {
      * @see #registerReceiver
      */
     public boolean sendBroadcast(Intent intent) {
-        synchronized (mReceivers) {
-            final String action = intent.getAction();
-            final String type = intent.resolveTypeIfNeeded(
-                    mAppContext.getContentResolver());
-            final Uri data = intent.getData();
-            final String scheme = intent.getScheme();
-            final Set<String> categories = intent.getCategories();
-
-            final boolean debug = DEBUG ||
-                    ((intent.getFlags() & Intent.FLAG_DEBUG_LOG_RESOLUTION) != 0);
+        return sendBroadcast(intent, false, null);
+    }
+
+    /**
+     * Like {@link #sendBroadcast(Intent)}, but if a broadcast sent with this
+     * method that is equal to the given one according to
+     * {@link Intent#filterEquals} is still waiting to be delivered to a
+     * receiver, the given Intent takes its place in the queue instead of being
+     * delivered after it. Use this for broadcasts that supersede the earlier ones, such as
+     * progress updates, so that slow receivers do not fall further behind.
+     *
+     * @param intent The Intent to broadcast; all receivers matching this
+     *     Intent will receive the broadcast.
+     *
+     * @see #registerReceiver
+     */
+    public boolean sendBroadcastCoalesced(Intent intent) {
+        return sendBroadcast(intent, true, null);
+    }
+
+    private boolean sendBroadcast(Intent intent, boolean coalesce,
+            ArrayList<Dispatcher> outDispatchers) {
+        final String action = intent.getAction();
+        final Uri data = intent.getData();
+        final String scheme = intent.getScheme();
+        final Set<String> categories = intent.getCategories();
+        String type = intent.getType();
+
+        final boolean debug = DEBUG ||
+                ((intent.getFlags() & Intent.FLAG_DEBUG_LOG_RESOLUTION) != 0);
+
+        ArrayList<ReceiverRecord> receivers = null;
+        mRegistryLock.readLock().lock();
+        try {
+            ActionIndex index = mActions.get(action);
+            if (index == null) {
+                if (debug) Log.v(TAG, "No receivers for action " + action);
+                return false;
+            }
+
+            // Only filters that look at the data can care about the type of a
+            // content: Uri, which may take a call to its provider to resolve.
+            if (type == null && data != null && index.hasDataFilters()) {
+                type = intent.resolveTypeIfNeeded(mAppContext.getContentResolver());
+            }
             if (debug) Log.v(
                     TAG, "Resolving type " + type + " scheme " + scheme
                     + " of intent " + intent);
 
-            ArrayList<ReceiverRecord> entries = mActions.get(intent.getAction());
-            if (entries != null) {
-                if (debug) Log.v(TAG, "Action list: " + entries);
+            if (data == null && type == null) {
+                // Action and data are already known to match these filters.
+                receivers = matchCategories(index.noData, categories, receivers, debug);
+            }
+            receivers = matchFilters(index.schemes.get(scheme != null ? scheme : ""),
+                    action, type, scheme, data, categories, receivers, debug);
+            if (type != null && !index.types.isEmpty()) {
+                if ("*/*".equals(type)) {
+                    for (ArrayList<ReceiverRecord> bucket : index.types.values()) {
+                        receivers = matchFilters(bucket, action, type, scheme, data,
+                                categories, receivers, debug);
+                    }
+                } else {
+                    receivers = matchFilters(index.types.get(baseType(type)), action, type,
+                            scheme, data, categories, receivers, debug);
+                    receivers = matchFilters(index.types.get("*"), action, type,
+                            scheme, data, categories, receivers, debug);
+                }
+            }
+        } finally {
+            mRegistryLock.readLock().unlock();
+        }
+
+        if (receivers == null) {
+            return false;
+        }
+        Dispatcher dispatcher = receivers.get(0).dispatcher;
+        boolean shared = true;
+        for (int i=1; i<receivers.size() && shared; i++) {
+            shared = receivers.get(i).dispatcher == dispatcher;
+        }
+        if (shared) {
+            dispatcher.enqueue(intent, receivers, coalesce);
+            if (outDispatchers != null) {
+                outDispatchers.add(dispatcher);
+            }
+            return true;
+        }
 
-                ArrayList<ReceiverRecord> receivers = null;
-                for (int i=0; i<entries.size(); i++) {
-                    ReceiverRecord receiver = entries.get(i);
-                    if (debug) Log.v(TAG, "Matching against filter " + receiver.filter);
+        // Hand each dispatcher the receivers that are called on it, keeping
+        // the order they were registered in.
+        ArrayList<Dispatcher> dispatchers = new ArrayList<Dispatcher>();
+        ArrayList<ArrayList<ReceiverRecord>> lists = new ArrayList<ArrayList<ReceiverRecord>>();
+        for (int i=0; i<receivers.size(); i++) {
+            ReceiverRecord receiver = receivers.get(i);
+            int which = dispatchers.indexOf(receiver.dispatcher);
+            if (which < 0) {
+                which = dispatchers.size();
+                dispatchers.add(receiver.dispatcher);
+                lists.add(new ArrayList<ReceiverRecord>());
+            }
+            lists.get(which).add(receiver);
+        }
+        for (int i=0; i<dispatchers.size(); i++) {
+            dispatchers.get(i).enqueue(intent, lists.get(i), coalesce);
+        }
+        if (outDispatchers != null) {
+            outDispatchers.addAll(dispatchers);
+        }
+        return true;
+    }
 
-                    if (receiver.broadcasting) {
-                        if (debug) {
-                            Log.v(TAG, "  Filter's target already added");
-                        }
-                        continue;
-                    }
+    private static ArrayList<ReceiverRecord> matchCategories(ArrayList<ReceiverRecord> entries,
+            Set<String> categories, ArrayList<ReceiverRecord> receivers, boolean debug) {
+        for (int i=0; i<entries.size(); i++) {
+            ReceiverRecord receiver = entries.get(i);
+            if (debug) Log.v(TAG, "Matching against filter " + receiver.filter);
 
-                    int match = receiver.filter.match(action, type, scheme, data,
-                            categories, "LocalBroadcastManager");
-                    if (match >= 0) {
-                        if (debug) Log.v(TAG, "  Filter matched!  match=0x" +
-                                Integer.toHexString(match));
-                        if (receivers == null) {
-                            receivers = new ArrayList<ReceiverRecord>();
-                        }
-                        receivers.add(receiver);
-                        receiver.broadcasting = true;
-                    } else {
-                        if (debug) {
-                            String reason;
-                            switch (match) {
-                                case IntentFilter.NO_MATCH_ACTION: reason = "action"; break;
-                                case IntentFilter.NO_MATCH_CATEGORY: reason = "category"; break;
-                                case IntentFilter.NO_MATCH_DATA: reason = "data"; break;
-                                case IntentFilter.NO_MATCH_TYPE: reason = "type"; break;
-                                default: reason = "unknown reason"; break;
-                            }
-                            Log.v(TAG, "  Filter did not match: " + reason);
-                        }
-                    }
-                }
+            if (receiver.filter.matchCategories(categories) == null) {
+                if (debug) Log.v(TAG, "  Filter matched!");
+                receivers = addReceiver(receivers, receiver);
+            } else {
+                if (debug) Log.v(TAG, "  Filter did not match: category");
+            }
+        }
+        return receivers;
+    }
 
-                if (receivers != null) {
-                    for (int i=0; i<receivers.size(); i++) {
-                        receivers.get(i).broadcasting = false;
-                    }
-                    mPendingBroadcasts.add(new BroadcastRecord(intent, receivers));
-                    if (!mHandler.hasMessages(MSG_EXEC_PENDING_BROADCASTS)) {
-                        mHandler.sendEmptyMessage(MSG_EXEC_PENDING_BROADCASTS);
+    private static ArrayList<ReceiverRecord> matchFilters(ArrayList<ReceiverRecord> entries,
+            String action, String type, String scheme, Uri data, Set<String> categories,
+            ArrayList<ReceiverRecord> receivers, boolean debug) {
+        if (entries == null) {
+            return receivers;
+        }
+        for (int i=0; i<entries.size(); i++) {
+            ReceiverRecord receiver = entries.get(i);
+            if (debug) Log.v(TAG, "Matching against filter " + receiver.filter);
+
+            int match = receiver.filter.match(action, type, scheme, data,
+                    categories, "LocalBroadcastManager");
+            if (match >= 0) {
+                if (debug) Log.v(TAG, "  Filter matched!  match=0x" +
+                        Integer.toHexString(match));
+                receivers = addReceiver(receivers, receiver);
+            } else {
+                if (debug) {
+                    String reason;
+                    switch (match) {
+                        case IntentFilter.NO_MATCH_ACTION: reason = "action"; break;
+                        case IntentFilter.NO_MATCH_CATEGORY: reason = "category"; break;
+                        case IntentFilter.NO_MATCH_DATA: reason = "data"; break;
+                        case IntentFilter.NO_MATCH_TYPE: reason = "type"; break;
+                        default: reason = "unknown reason"; break;
                     }
-                    return true;
+                    Log.v(TAG, "  Filter did not match: " + reason);
                 }
             }
         }
-        return false;
+        return receivers;
     }
 
     /**
-     * Like {@link #sendBroadcast(Intent)}, but if there are any receivers for
-     * the Intent this function will block and immediately dispatch them before
-     * returning.
+     * Adds a matching receiver, keeping the receivers in the order they were
+     * registered in. A filter found through several of its schemes or types
+     * is only added once.
      */
-    public void sendBroadcastSync(Intent intent) {
-        if (sendBroadcast(intent)) {
-            executePendingBroadcasts();
+    private static ArrayList<ReceiverRecord> addReceiver(ArrayList<ReceiverRecord> receivers,
+            ReceiverRecord receiver) {
+        if (receivers == null) {
+            receivers = new ArrayList<ReceiverRecord>();
         }
+        int i = receivers.size();
+        while (i > 0 && receivers.get(i - 1).sequence >= receiver.sequence) {
+            if (receivers.get(i - 1) == receiver) {
+                return receivers;
+            }
+            i--;
+        }
+        receivers.add(i, receiver);
+        return receivers;
     }
 
-    private void executePendingBroadcasts() {
-        while (true) {
-            BroadcastRecord[] brs = null;
-            synchronized (mReceivers) {
-                final int N = mPendingBroadcasts.size();
-                if (N <= 0) {
-                    return;
-                }
-                brs = new BroadcastRecord[N];
-                mPendingBroadcasts.toArray(brs);
-                mPendingBroadcasts.clear();
-            }
-            for (int i=0; i<brs.length; i++) {
-                BroadcastRecord br = brs[i];
-                for (int j=0; j<br.receivers.size(); j++) {
-                    br.receivers.get(j).receiver.onReceive(mAppContext, br.intent);
-                }
+    private static String baseType(String type) {
+        final int slash = type.indexOf('/');
+        return slash >= 0 ? type.substring(0, slash) : type;
+    }
+
+    /**
+     * Like {@link #sendBroadcast(Intent)}, but if there are any receivers for
+     * the Intent this function will block and immediately dispatch them before
+     * returning. The receivers are called on the calling thread, along with any
+     * broadcasts still pending for them, whatever Looper or Executor they were
+     * registered with. The exception are receivers registered with an Executor
+     * that is delivering to them at the time: so that they are never called
+     * concurrently with themselves, the broadcast is left to that Executor,
+     * which delivers it before it finishes, possibly after this returns.
+     */
+    public void sendBroadcastSync(Intent intent) {
+        ArrayList<Dispatcher> dispatchers = new ArrayList<Dispatcher>(1);
+        if (sendBroadcast(intent, false, dispatchers)) {
+            for (int i=0; i<dispatchers.size(); i++) {
+                dispatchers.get(i).executePendingBroadcasts();
             }
         }
     }
@@ -23,6 +23,10 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
 
 /**
  * Static library support version of the framework's {@link android.util.AtomicFile},
@@ -38,11 +42,36 @@ import java.io.IOException;
  * Do not use this class when the file may be accessed or modified concurrently
  * by multiple threads or processes.  The caller is responsible for ensuring
  * appropriate mutual exclusion invariants whenever it accesses the file.
+ * </p><p>
+ * Besides replacing the whole file, data can be added to the end of it with
+ * {@link #append}. Appended records go to a journal file next to the base file
+ * and become durable together on the next {@link #syncAppends()}. Reads return
+ * the base file followed by the journaled data, and once the journal grows past
+ * {@link #setJournalThreshold a threshold} it is folded into a new base file with
+ * the same backup protocol as {@link #startWrite()}.
  * </p>
  */
 public class AtomicFile {
+    private static final int JOURNAL_MAGIC = 0x4a524e4c;
+    /** Magic, length of the base file and CRC-32 of the base file. */
+    private static final int JOURNAL_HEADER_SIZE = 16;
+    /** Length before and CRC-32 after every record. */
+    private static final int RECORD_OVERHEAD = 8;
+    private static final int DEFAULT_JOURNAL_THRESHOLD = 64 * 1024;
+
     private final File mBaseName;
     private final File mBackupName;
+    private final File mJournalName;
+
+    private FileOutputStream mJournalStream;
+    private long mJournalLength;
+    private int mJournalThreshold = DEFAULT_JOURNAL_THRESHOLD;
+    /**
+     * Whether the journal is known to belong to the current base file, so that
+     * reads can skip checksumming the base file. Only this instance changes the
+     * files, so this holds until it replaces or restores the base file.
+     */
+    private boolean mJournalVerified;
 
     /**
      * Create a new AtomicFile for a file located at the given File path.
@@ -51,6 +80,7 @@ public class AtomicFile {
     public AtomicFile(File baseName) {
         mBaseName = baseName;
         mBackupName = new File(baseName.getPath() + ".bak");
+        mJournalName = new File(baseName.getPath() + ".journal");
     }
 
     /**
@@ -62,11 +92,14 @@ public class AtomicFile {
     }
 
     /**
-     * Delete the atomic file.  This deletes both the base and backup files.
+     * Delete the atomic file.  This deletes the base, backup and journal files.
      */
     public void delete() {
+        closeJournal();
+        mJournalVerified = false;
         mBaseName.delete();
         mBackupName.delete();
+        mJournalName.delete();
     }
 
     /**
@@ -84,6 +117,10 @@ public class AtomicFile {
      * access to AtomicFile.
      */
     public FileOutputStream startWrite() throws IOException {
+        // Records appended from now on would be discarded along with the journal.
+        closeJournal();
+        mJournalVerified = false;
+
         // Rename the current file so it may be used as a backup during the next read
         if (mBaseName.exists()) {
             if (!mBackupName.exists()) {
@@ -124,6 +161,8 @@ public class AtomicFile {
             try {
                 str.close();
                 mBackupName.delete();
+                // The journal applies to the previous base file.
+                mJournalName.delete();
             } catch (IOException e) {
                 Log.w("AtomicFile", "finishWrite: Got exception:", e);
             }
@@ -148,6 +187,54 @@ public class AtomicFile {
         }
     }
 
+    /**
+     * Start a new write operation on the file, like {@link #startWrite()},
+     * but return a {@link FileChannel} so data can be written straight from
+     * direct buffers.  You <em>must not</em> directly close the given
+     * channel; instead call either {@link #finishWrite(FileChannel)}
+     * or {@link #failWrite(FileChannel)}.
+     */
+    public FileChannel startWriteChannel() throws IOException {
+        return startWrite().getChannel();
+    }
+
+    /**
+     * Call when you have successfully finished writing to the channel
+     * returned by {@link #startWriteChannel()}.  This will sync, close and
+     * commit the new data.
+     */
+    public void finishWrite(FileChannel channel) {
+        if (channel != null) {
+            sync(channel);
+            try {
+                channel.close();
+                mBackupName.delete();
+                // The journal applies to the previous base file.
+                mJournalName.delete();
+            } catch (IOException e) {
+                Log.w("AtomicFile", "finishWrite: Got exception:", e);
+            }
+        }
+    }
+
+    /**
+     * Call when you have failed for some reason at writing to the channel
+     * returned by {@link #startWriteChannel()}.  This will close the channel
+     * and roll back to the previous state of the file.
+     */
+    public void failWrite(FileChannel channel) {
+        if (channel != null) {
+            sync(channel);
+            try {
+                channel.close();
+                mBaseName.delete();
+                mBackupName.renameTo(mBaseName);
+            } catch (IOException e) {
+                Log.w("AtomicFile", "failWrite: Got exception:", e);
+            }
+        }
+    }
+
     /**
      * Open the atomic file for reading.  If there previously was an
      * incomplete write, this will roll back to the last good data before
@@ -159,13 +246,253 @@ public class AtomicFile {
      * write and roll back, causing the new data currently being written to
      * be dropped.  You must do your own threading protection for access to
      * AtomicFile.
+     *
+     * <p>If records were added with {@link #append}, the returned stream
+     * reads them after the contents of the base file. Its
+     * {@link FileInputStream#getChannel() channel} and
+     * {@link FileInputStream#getFD() file descriptor} only cover the base file.
      */
     public FileInputStream openRead() throws FileNotFoundException {
+        restoreBackup();
+        if (mJournalName.exists()) {
+            try {
+                final JournalContents journal = readJournal();
+                if (journal != null && journal.dataLength > 0) {
+                    return new JournalInputStream(mBaseName, journal.data, journal.dataLength);
+                }
+            } catch (IOException e) {
+                Log.w("AtomicFile", "openRead: Couldn't read journal " + mJournalName, e);
+            }
+        }
+        return new FileInputStream(mBaseName);
+    }
+
+    private void restoreBackup() {
         if (mBackupName.exists()) {
+            mJournalVerified = false;
             mBaseName.delete();
             mBackupName.renameTo(mBaseName);
         }
-        return new FileInputStream(mBaseName);
+    }
+
+    /**
+     * Sets the size in bytes past which {@link #syncAppends()} folds the
+     * journal into the base file. The default is 64KB.
+     */
+    public void setJournalThreshold(int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold <= 0");
+        }
+        mJournalThreshold = threshold;
+    }
+
+    /**
+     * Appends {@code data} to the end of the file.
+     *
+     * @see #append(byte[], int, int)
+     */
+    public void append(byte[] data) throws IOException {
+        append(data, 0, data.length);
+    }
+
+    /**
+     * Appends {@code length} bytes of {@code data} starting at {@code offset}
+     * to the end of the file. The bytes are written to the journal as one
+     * record, but are not guaranteed to survive a crash until
+     * {@link #syncAppends()} is called, so several appends can share one sync.
+     * A record that was only partially written when a crash happened is
+     * ignored when the file is read.
+     */
+    public void append(byte[] data, int offset, int length) throws IOException {
+        if (mJournalStream == null) {
+            openJournal();
+        }
+        final byte[] record = new byte[length + RECORD_OVERHEAD];
+        putInt(record, 0, length);
+        System.arraycopy(data, offset, record, 4, length);
+        final CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        putInt(record, length + 4, (int) crc.getValue());
+        mJournalStream.write(record);
+        mJournalLength += record.length;
+    }
+
+    /**
+     * Makes all records added with {@link #append} since the last call
+     * durable. If the journal has grown past the threshold set with
+     * {@link #setJournalThreshold}, it is then folded into the base file with
+     * {@link #compact()}.
+     */
+    public void syncAppends() throws IOException {
+        if (mJournalStream == null) {
+            return;
+        }
+        if (!sync(mJournalStream)) {
+            throw new IOException("Couldn't sync " + mJournalName);
+        }
+        if (mJournalLength > mJournalThreshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the base file with the records of the journal appended to it
+     * and deletes the journal. This uses {@link #startWrite()} and
+     * {@link #finishWrite}, so the file stays intact if this is interrupted.
+     * Does nothing if no records have been added with {@link #append}.
+     */
+    public void compact() throws IOException {
+        restoreBackup();
+        final JournalContents journal = readJournal();
+        if (journal == null || journal.dataLength == 0) {
+            return;
+        }
+        final byte[] data = readFully();
+        final FileOutputStream str = startWrite();
+        try {
+            str.write(data);
+        } catch (IOException e) {
+            failWrite(str);
+            throw e;
+        }
+        finishWrite(str);
+    }
+
+    private void openJournal() throws IOException {
+        restoreBackup();
+        if (!mBaseName.exists()) {
+            finishWrite(startWrite());
+        }
+        final JournalContents journal = readJournal();
+        if (journal == null) {
+            // Start a new journal for the current base file.
+            final long[] checksum = checksum(mBaseName);
+            final byte[] header = new byte[JOURNAL_HEADER_SIZE];
+            putInt(header, 0, JOURNAL_MAGIC);
+            putInt(header, 4, (int) (checksum[0] >>> 32));
+            putInt(header, 8, (int) checksum[0]);
+            putInt(header, 12, (int) checksum[1]);
+            mJournalStream = new FileOutputStream(mJournalName);
+            mJournalStream.write(header);
+            mJournalLength = JOURNAL_HEADER_SIZE;
+            mJournalVerified = true;
+        } else {
+            // Drop a partially written record at the end before appending to it.
+            final RandomAccessFile file = new RandomAccessFile(mJournalName, "rw");
+            try {
+                file.setLength(journal.validLength);
+            } finally {
+                file.close();
+            }
+            mJournalStream = new FileOutputStream(mJournalName, true);
+            mJournalLength = journal.validLength;
+        }
+    }
+
+    private void closeJournal() {
+        if (mJournalStream != null) {
+            try {
+                mJournalStream.close();
+            } catch (IOException e) {
+                Log.w("AtomicFile", "closeJournal: Got exception:", e);
+            }
+            mJournalStream = null;
+        }
+    }
+
+    /**
+     * Reads the records of the journal, or returns null if there is no journal
+     * or it was written for a different base file.
+     */
+    private JournalContents readJournal() throws IOException {
+        if (!mJournalName.exists()) {
+            return null;
+        }
+        final byte[] journal;
+        final FileInputStream stream = new FileInputStream(mJournalName);
+        try {
+            journal = readStream(stream, (int) mJournalName.length());
+        } finally {
+            stream.close();
+        }
+        if (journal.length < JOURNAL_HEADER_SIZE || getInt(journal, 0) != JOURNAL_MAGIC) {
+            return null;
+        }
+        final long baseLength =
+                ((long) getInt(journal, 4) << 32) | (getInt(journal, 8) & 0xffffffffL);
+        if (baseLength != (mBaseName.exists() ? mBaseName.length() : 0)) {
+            return null;
+        }
+        if (!mJournalVerified) {
+            // A journal left over from the previous base file can only come
+            // from an interrupted write, so the base file only needs to be
+            // checksummed once.
+            final long[] checksum = checksum(mBaseName);
+            if ((int) checksum[1] != getInt(journal, 12)) {
+                return null;
+            }
+            mJournalVerified = true;
+        }
+
+        // Copy the payloads over the record framing in place.
+        final CRC32 crc = new CRC32();
+        int pos = JOURNAL_HEADER_SIZE;
+        int dataLength = 0;
+        while (pos + RECORD_OVERHEAD <= journal.length) {
+            final int length = getInt(journal, pos);
+            if (length < 0 || length > journal.length - pos - RECORD_OVERHEAD) {
+                break;
+            }
+            crc.reset();
+            crc.update(journal, pos + 4, length);
+            if ((int) crc.getValue() != getInt(journal, pos + 4 + length)) {
+                break;
+            }
+            System.arraycopy(journal, pos + 4, journal, dataLength, length);
+            dataLength += length;
+            pos += length + RECORD_OVERHEAD;
+        }
+
+        final JournalContents contents = new JournalContents();
+        contents.data = journal;
+        contents.dataLength = dataLength;
+        contents.validLength = pos;
+        return contents;
+    }
+
+    /**
+     * Returns the length and CRC-32 of {@code file}, treating a missing file as
+     * empty.
+     */
+    private static long[] checksum(File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        long length = 0;
+        if (file.exists()) {
+            final FileInputStream stream = new FileInputStream(file);
+            try {
+                final byte[] buffer = new byte[8192];
+                int amt;
+                while ((amt = stream.read(buffer)) > 0) {
+                    crc.update(buffer, 0, amt);
+                    length += amt;
+                }
+            } finally {
+                stream.close();
+            }
+        }
+        return new long[] {length, crc.getValue()};
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int getInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16)
+                | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
     }
 
     /**
@@ -175,31 +502,74 @@ public class AtomicFile {
     public byte[] readFully() throws IOException {
         FileInputStream stream = openRead();
         try {
-            int pos = 0;
-            int avail = stream.available();
-            byte[] data = new byte[avail];
-            while (true) {
-                int amt = stream.read(data, pos, data.length-pos);
-                //Log.i("foo", "Read " + amt + " bytes at " + pos
-                //        + " of avail " + data.length);
-                if (amt <= 0) {
-                    //Log.i("foo", "**** FINISHED READING: pos=" + pos
-                    //        + " len=" + data.length);
-                    return data;
-                }
-                pos += amt;
-                avail = stream.available();
-                if (avail > data.length-pos) {
-                    byte[] newData = new byte[pos+avail];
-                    System.arraycopy(data, 0, newData, 0, pos);
-                    data = newData;
-                }
-            }
+            return readStream(stream, stream.available());
         } finally {
             stream.close();
         }
     }
 
+    /**
+     * Maps the contents of the file into memory read-only, so large files can
+     * be read without copying them onto the heap.  Like {@link #openRead()},
+     * this first rolls back an incomplete write.  Only the base file can be
+     * mapped, so records added with {@link #append} must first be folded into
+     * it by calling {@link #compact()}, which does nothing if there are none.
+     *
+     * <p>The mapping stays valid after the file is replaced or deleted, but
+     * it then no longer reflects the current contents of the file.
+     *
+     * @throws IllegalStateException if there are appended records that have
+     *     not been compacted.
+     */
+    public MappedByteBuffer readMapped() throws IOException {
+        restoreBackup();
+        final JournalContents journal = readJournal();
+        if (journal != null && journal.dataLength > 0) {
+            throw new IllegalStateException("Records appended to " + mBaseName
+                    + " have not been compacted");
+        }
+        final FileInputStream stream = new FileInputStream(mBaseName);
+        try {
+            final FileChannel channel = stream.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static byte[] readStream(FileInputStream stream, int avail) throws IOException {
+        int pos = 0;
+        byte[] data = new byte[avail];
+        while (true) {
+            int amt = stream.read(data, pos, data.length-pos);
+            //Log.i("foo", "Read " + amt + " bytes at " + pos
+            //        + " of avail " + data.length);
+            if (amt <= 0) {
+                //Log.i("foo", "**** FINISHED READING: pos=" + pos
+                //        + " len=" + data.length);
+                return data;
+            }
+            pos += amt;
+            avail = stream.available();
+            if (avail > data.length-pos) {
+                byte[] newData = new byte[pos+avail];
+                System.arraycopy(data, 0, newData, 0, pos);
+                data = newData;
+            }
+        }
+    }
+
+    static boolean sync(FileChannel channel) {
+        try {
+            if (channel != null) {
+                channel.force(true);
+            }
+            return true;
+        } catch (IOException e) {
+        }
+        return false;
+    }
+
     static boolean sync(FileOutputStream stream) {
         try {
             if (stream != null) {
@@ -210,4 +580,85 @@ public class AtomicFile {
         }
         return false;
     }
+
+    private static class JournalContents {
+        /** The record payloads, back to back from the start of the array. */
+        byte[] data;
+        int dataLength;
+        /** Length of the journal up to the end of the last complete record. */
+        long validLength;
+    }
+
+    /**
+     * Reads the base file and then the data replayed from the journal.
+     */
+    private static class JournalInputStream extends FileInputStream {
+        private final byte[] mJournal;
+        private final int mLength;
+        private int mPos;
+        private boolean mBaseDone;
+
+        JournalInputStream(File base, byte[] journal, int length) throws FileNotFoundException {
+            super(base);
+            mJournal = journal;
+            mLength = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!mBaseDone) {
+                final int b = super.read();
+                if (b >= 0) {
+                    return b;
+                }
+                mBaseDone = true;
+            }
+            return mPos < mLength ? (mJournal[mPos++] & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer) throws IOException {
+            return read(buffer, 0, buffer.length);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (!mBaseDone) {
+                final int amt = super.read(buffer, offset, count);
+                if (amt > 0) {
+                    return amt;
+                }
+                mBaseDone = true;
+            }
+            if (mPos >= mLength) {
+                return -1;
+            }
+            final int amt = Math.min(count, mLength - mPos);
+            System.arraycopy(mJournal, mPos, buffer, offset, amt);
+            mPos += amt;
+            return amt;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = 0;
+            if (!mBaseDone) {
+                skipped = super.skip(Math.min(count, super.available()));
+                if (skipped < count) {
+                    mBaseDone = true;
+                }
+            }
+            final int amt = (int) Math.min(count - skipped, mLength - mPos);
+            mPos += amt;
+            return skipped + amt;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (mBaseDone ? 0 : super.available()) + mLength - mPos;
+        }
+    }
 }
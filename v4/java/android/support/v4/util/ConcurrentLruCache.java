@@ -0,0 +1,665 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache with the same contract as {@link LruCache} that is designed to be shared by
+ * many threads.
+ * <p>
+ * {@link LruCache} guards every operation with a single lock and, since its map is kept in
+ * access order, every hit is a write to that map. This class splits the keyspace across a
+ * number of stripes, each with its own lock and its own access ordered map, so threads working
+ * on different keys rarely contend. Each entry is stamped with the time it was last accessed;
+ * when the cache is over its maximum size, the least recently used entry among a few sampled
+ * stripes is evicted. Eviction is therefore approximately, rather than strictly, least recently
+ * used, and never has to lock every stripe.
+ * <p>
+ * When several threads miss on the same key at the same time, only one of them calls
+ * {@link #create}. The others block until that value is available and then return it.
+ * <p>
+ * {@link #sizeOf} is called once, when an entry is added, and the result is remembered until
+ * the entry is removed. {@link #create} and {@link #entryRemoved} are never called while any
+ * lock of this cache is held.
+ * <p>
+ * This class does not allow null to be used as a key or value.
+ */
+public class ConcurrentLruCache<K, V> {
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    private static final int MAX_CONCURRENCY_LEVEL = 1 << 16;
+    /** The number of non-empty stripes compared with each other to pick an eviction victim. */
+    private static final int EVICTION_SAMPLE_SIZE = 4;
+
+    private final Stripe<K, V>[] mStripes;
+    private final int mStripeMask;
+
+    /** Size of this cache in units. Not necessarily the number of elements. */
+    private final AtomicInteger mSize = new AtomicInteger();
+    private volatile int mMaxSize;
+    /** Rotates the first stripe sampled for eviction so that all stripes take their turn. */
+    private final AtomicInteger mEvictionCursor = new AtomicInteger();
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     */
+    public ConcurrentLruCache(int maxSize) {
+        this(maxSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     * @param concurrencyLevel the estimated number of threads accessing the cache at the same
+     *     time. It is rounded up to a power of two and used as the number of lock stripes.
+     */
+    public ConcurrentLruCache(int maxSize, int concurrencyLevel) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel <= 0");
+        }
+        int stripeCount = 1;
+        while (stripeCount < concurrencyLevel && stripeCount < MAX_CONCURRENCY_LEVEL) {
+            stripeCount <<= 1;
+        }
+        mMaxSize = maxSize;
+        mStripeMask = stripeCount - 1;
+        mStripes = newStripeArray(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            mStripes[i] = new Stripe<K, V>();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Stripe<K, V>[] newStripeArray(int size) {
+        return (Stripe<K, V>[]) new Stripe<?, ?>[size];
+    }
+
+    /**
+     * Sets the size of the cache.
+     *
+     * @param maxSize The new maximum size.
+     */
+    public void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache or can be
+     * created by {@code #create}. If a value was returned, it is moved to the
+     * head of the queue. This returns null if a value is not cached and cannot
+     * be created.
+     * <p>
+     * If another thread is already creating the value for {@code key}, this waits for it
+     * instead of calling {@link #create} again.
+     *
+     * @throws IllegalStateException if called by {@link #create} for the key it is creating.
+     */
+    public final V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final Stripe<K, V> stripe = stripeFor(key);
+        CreationTask<V> creation;
+        boolean isCreator = false;
+        synchronized (stripe) {
+            Node<V> node = stripe.map.get(key);
+            if (node != null) {
+                node.accessTime = System.nanoTime();
+                stripe.hitCount++;
+                return node.value;
+            }
+            stripe.missCount++;
+            creation = stripe.creations.get(key);
+            if (creation == null) {
+                creation = new CreationTask<V>(new Creation(stripe, key));
+                stripe.creations.put(key, creation);
+                isCreator = true;
+            } else if (creation.mCreator == Thread.currentThread()) {
+                // Waiting for our own creation would never return.
+                throw new IllegalStateException("create(" + key + ") called get() for its key");
+            }
+        }
+
+        if (isCreator) {
+            try {
+                creation.run();
+            } finally {
+                synchronized (stripe) {
+                    if (stripe.creations.get(key) == creation) {
+                        stripe.creations.remove(key);
+                    }
+                }
+            }
+        }
+        return getUninterruptibly(creation);
+    }
+
+    /**
+     * Caches {@code value} for {@code key}. The value is moved to the head of
+     * the queue.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        final Stripe<K, V> stripe = stripeFor(key);
+        final Node<V> node = new Node<V>(value, safeSizeOf(key, value), System.nanoTime());
+        Node<V> previous;
+        synchronized (stripe) {
+            stripe.putCount++;
+            previous = stripe.map.put(key, node);
+            mSize.addAndGet(previous == null ? node.size : node.size - previous.size);
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous.value, value);
+        }
+
+        trimToSize(mMaxSize);
+        return previous != null ? previous.value : null;
+    }
+
+    /**
+     * Remove the least recently used entries until the total size of the
+     * remaining entries is at or below the requested size.
+     *
+     * @param maxSize the maximum size of the cache before returning. May be -1
+     *            to evict even 0-sized elements.
+     */
+    public void trimToSize(int maxSize) {
+        while (mSize.get() > maxSize) {
+            final Stripe<K, V> victim = sampleVictim();
+            if (victim == null) {
+                // Every entry has been removed by other threads. Entries added since then are
+                // trimmed by the threads adding them.
+                break;
+            }
+
+            K key;
+            V value;
+            synchronized (victim) {
+                // The stripe may have changed since it was sampled; evict its eldest entry
+                // as of now, or sample again if it has been emptied in the meantime.
+                Map.Entry<K, Node<V>> eldest = victim.eldest();
+                if (eldest == null) {
+                    continue;
+                }
+                Node<V> node = eldest.getValue();
+                if (!claimEviction(maxSize, node.size)) {
+                    // Other threads have already evicted enough.
+                    break;
+                }
+                key = eldest.getKey();
+                value = node.value;
+                victim.map.remove(key);
+                victim.evictionCount++;
+            }
+
+            entryRemoved(true, key, value, null);
+        }
+    }
+
+    /**
+     * Returns the stripe whose least recently used entry is the oldest among a few non-empty
+     * stripes, or null if every stripe is empty.
+     */
+    private Stripe<K, V> sampleVictim() {
+        final int start = mEvictionCursor.getAndIncrement();
+        Stripe<K, V> victim = null;
+        long oldest = 0;
+        int sampled = 0;
+        for (int i = 0; i <= mStripeMask && sampled < EVICTION_SAMPLE_SIZE; i++) {
+            final Stripe<K, V> stripe = mStripes[(start + i) & mStripeMask];
+            synchronized (stripe) {
+                Map.Entry<K, Node<V>> eldest = stripe.eldest();
+                if (eldest == null) {
+                    continue;
+                }
+                sampled++;
+                if (victim == null || eldest.getValue().accessTime - oldest < 0) {
+                    victim = stripe;
+                    oldest = eldest.getValue().accessTime;
+                }
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Takes {@code size} off the size of the cache if it is still above {@code maxSize}, so
+     * that threads trimming at the same time do not evict more than needed.
+     *
+     * @return true if the caller should evict the entry of the given size.
+     */
+    private boolean claimEviction(int maxSize, int size) {
+        while (true) {
+            final int current = mSize.get();
+            if (current <= maxSize) {
+                return false;
+            }
+            if (mSize.compareAndSet(current, current - size)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final Stripe<K, V> stripe = stripeFor(key);
+        Node<V> previous;
+        synchronized (stripe) {
+            previous = stripe.map.remove(key);
+            if (previous != null) {
+                mSize.addAndGet(-previous.size);
+            }
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous.value, null);
+            return previous.value;
+        }
+        return null;
+    }
+
+    /**
+     * Called for entries that have been evicted or removed. This method is
+     * invoked when a value is evicted to make space, removed by a call to
+     * {@link #remove}, or replaced by a call to {@link #put}. The default
+     * implementation does nothing.
+     *
+     * <p>The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * @param evicted true if the entry is being removed to make space, false
+     *     if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param newValue the new value for {@code key}, if it exists. If non-null,
+     *     this removal was caused by a {@link #put}. Otherwise it was caused by
+     *     an eviction or a {@link #remove}.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {
+    }
+
+    /**
+     * Called after a cache miss to compute a value for the corresponding key.
+     * Returns the computed value or null if no value can be computed. The
+     * default implementation returns null.
+     *
+     * <p>The method is called without synchronization, but at most one thread
+     * creates a value for a given key at a time; other threads asking for the
+     * same key wait for the result. If a value for {@code key} is put into the
+     * cache while this method is executing, that value is kept, the created
+     * value is released with {@link #entryRemoved} and every waiting thread
+     * receives the value that was put.
+     *
+     * <p>This method must not call {@link #get} for {@code key}, as that would
+     * wait for itself; such a call throws {@link IllegalStateException}.
+     */
+    protected V create(K key) {
+        return null;
+    }
+
+    private int safeSizeOf(K key, V value) {
+        int result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value} in
+     * user-defined units.  The default implementation returns 1 so that size
+     * is the number of entries and max size is the maximum number of entries.
+     *
+     * <p>This is called once when an entry is added to the cache; the result
+     * is used for the rest of the entry's lifetime.
+     */
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Clear the cache, calling {@link #entryRemoved} on each removed entry.
+     */
+    public final void evictAll() {
+        trimToSize(-1); // -1 will evict 0-sized elements
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the number
+     * of entries in the cache. For all other caches, this returns the sum of
+     * the sizes of the entries in this cache.
+     */
+    public final int size() {
+        return mSize.get();
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the maximum
+     * number of entries in the cache. For all other caches, this returns the
+     * maximum sum of the sizes of the entries in this cache.
+     */
+    public final int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned a value that was
+     * already present in the cache.
+     */
+    public final int hitCount() {
+        int count = 0;
+        for (Stripe<K, V> stripe : mStripes) {
+            synchronized (stripe) {
+                count += stripe.hitCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned null or required a new
+     * value to be created, including the calls that waited for a value being
+     * created by another thread.
+     */
+    public final int missCount() {
+        int count = 0;
+        for (Stripe<K, V> stripe : mStripes) {
+            synchronized (stripe) {
+                count += stripe.missCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of times {@link #create(Object)} returned a value.
+     */
+    public final int createCount() {
+        int count = 0;
+        for (Stripe<K, V> stripe : mStripes) {
+            synchronized (stripe) {
+                count += stripe.createCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of times {@link #put} was called.
+     */
+    public final int putCount() {
+        int count = 0;
+        for (Stripe<K, V> stripe : mStripes) {
+            synchronized (stripe) {
+                count += stripe.putCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of values that have been evicted.
+     */
+    public final int evictionCount() {
+        int count = 0;
+        for (Stripe<K, V> stripe : mStripes) {
+            synchronized (stripe) {
+                count += stripe.evictionCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a copy of the current contents of the cache, ordered from least
+     * recently accessed to most recently accessed.
+     * <p>
+     * The stripes are copied one at a time, so the snapshot is not an atomic view of the cache
+     * if other threads modify it concurrently.
+     */
+    public final Map<K, V> snapshot() {
+        final ArrayList<Map.Entry<K, Node<V>>> entries = new ArrayList<Map.Entry<K, Node<V>>>();
+        for (Stripe<K, V> stripe : mStripes) {
+            synchronized (stripe) {
+                for (Map.Entry<K, Node<V>> entry : stripe.map.entrySet()) {
+                    entries.add(new Snapshot<K, V>(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        Collections.sort(entries, ACCESS_TIME_COMPARATOR);
+
+        final LinkedHashMap<K, V> result = new LinkedHashMap<K, V>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Map.Entry<K, Node<V>> entry = entries.get(i);
+            result.put(entry.getKey(), entry.getValue().value);
+        }
+        return result;
+    }
+
+    @Override
+    public final String toString() {
+        int accesses = 0;
+        int hitCount = 0;
+        for (Stripe<K, V> stripe : mStripes) {
+            synchronized (stripe) {
+                hitCount += stripe.hitCount;
+                accesses += stripe.hitCount + stripe.missCount;
+            }
+        }
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format("ConcurrentLruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                mMaxSize, hitCount, accesses - hitCount, hitPercent);
+    }
+
+    private Stripe<K, V> stripeFor(K key) {
+        int h = key.hashCode();
+        // Spread the higher bits downwards, as only the low bits select the stripe.
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return mStripes[h & mStripeMask];
+    }
+
+    private static <V> V getUninterruptibly(FutureTask<V> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Creates the value for a key on behalf of every thread waiting for it. The result of the
+     * task is the value that ends up in the cache, so that no waiting thread receives a created
+     * value that lost to a concurrent {@link #put}. Like any cached value, it may be evicted
+     * before the waiting threads get it, for instance when it is larger than the cache itself.
+     */
+    private class Creation implements Callable<V> {
+        private final Stripe<K, V> mStripe;
+        private final K mKey;
+
+        Creation(Stripe<K, V> stripe, K key) {
+            mStripe = stripe;
+            mKey = key;
+        }
+
+        @Override
+        public V call() {
+            final V createdValue = create(mKey);
+            if (createdValue == null) {
+                return null;
+            }
+
+            final Node<V> node = new Node<V>(createdValue, safeSizeOf(mKey, createdValue),
+                    System.nanoTime());
+            V existingValue = null;
+            synchronized (mStripe) {
+                mStripe.createCount++;
+                mStripe.creations.remove(mKey);
+                Node<V> existing = mStripe.map.get(mKey);
+                if (existing != null) {
+                    // There was a conflict so keep the value that was put while creating.
+                    existing.accessTime = node.accessTime;
+                    existingValue = existing.value;
+                } else {
+                    mStripe.map.put(mKey, node);
+                    mSize.addAndGet(node.size);
+                }
+            }
+
+            if (existingValue != null) {
+                entryRemoved(false, mKey, createdValue, existingValue);
+                return existingValue;
+            }
+            trimToSize(mMaxSize);
+            return createdValue;
+        }
+    }
+
+    /**
+     * A creation in progress, remembering the thread that runs it.
+     */
+    private static class CreationTask<V> extends FutureTask<V> {
+        final Thread mCreator = Thread.currentThread();
+
+        CreationTask(Callable<V> callable) {
+            super(callable);
+        }
+    }
+
+    private static final Comparator<Map.Entry<?, ? extends Node<?>>> ACCESS_TIME_COMPARATOR =
+            new Comparator<Map.Entry<?, ? extends Node<?>>>() {
+                @Override
+                public int compare(Map.Entry<?, ? extends Node<?>> lhs,
+                        Map.Entry<?, ? extends Node<?>> rhs) {
+                    long diff = lhs.getValue().accessTime - rhs.getValue().accessTime;
+                    return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+                }
+            };
+
+    /**
+     * A cached value, the size it was added with and the last time it was accessed.
+     */
+    private static class Node<V> {
+        final V value;
+        final int size;
+        long accessTime;
+
+        Node(V value, int size, long accessTime) {
+            this.value = value;
+            this.size = size;
+            this.accessTime = accessTime;
+        }
+    }
+
+    /**
+     * An immutable copy of an entry, taken so that the access time does not change while a
+     * snapshot is being sorted.
+     */
+    private static class Snapshot<K, V> implements Map.Entry<K, Node<V>> {
+        private final K mKey;
+        private final Node<V> mNode;
+
+        Snapshot(K key, Node<V> node) {
+            mKey = key;
+            mNode = new Node<V>(node.value, node.size, node.accessTime);
+        }
+
+        @Override
+        public K getKey() {
+            return mKey;
+        }
+
+        @Override
+        public Node<V> getValue() {
+            return mNode;
+        }
+
+        @Override
+        public Node<V> setValue(Node<V> object) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * One lock stripe. All fields are guarded by the stripe itself.
+     */
+    private static class Stripe<K, V> {
+        final LinkedHashMap<K, Node<V>> map = new LinkedHashMap<K, Node<V>>(0, 0.75f, true);
+        final HashMap<K, CreationTask<V>> creations = new HashMap<K, CreationTask<V>>();
+
+        int putCount;
+        int createCount;
+        int evictionCount;
+        int hitCount;
+        int missCount;
+
+        Map.Entry<K, Node<V>> eldest() {
+            Iterator<Map.Entry<K, Node<V>>> it = map.entrySet().iterator();
+            return it.hasNext() ? it.next() : null;
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package android.support.v4.util;
 
+import java.util.Arrays;
+
 class ContainerHelpers {
     static final int[] EMPTY_INTS = new int[0];
     static final long[] EMPTY_LONGS = new long[0];
@@ -37,10 +39,118 @@ class ContainerHelpers {
         return need;
     }
 
+    /**
+     * Number of index tables of each of the two smallest lengths kept for reuse
+     * by the hash maps.
+     */
+    private static final int HASH_INDEX_CACHE_SIZE = 10;
+    private static final int HASH_INDEX_BASE_LENGTH = 8;
+
+    private static final int[][] sHashIndexCache = new int[HASH_INDEX_CACHE_SIZE][];
+    private static int sHashIndexCacheSize;
+    private static final int[][] sTwiceHashIndexCache = new int[HASH_INDEX_CACHE_SIZE][];
+    private static int sTwiceHashIndexCacheSize;
+
+    /**
+     * Returns the length of the open addressing index table used by the hash
+     * maps for the given capacity: the smallest power of two that keeps the load
+     * factor at or below 3/4.
+     */
+    static int hashIndexLength(int capacity) {
+        int length = 4;
+        while (length * 3L < capacity * 4L) {
+            length <<= 1;
+        }
+        return length;
+    }
+
+    static int hash(int key) {
+        final int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    static int hash(long key) {
+        return hash((int) (key ^ (key >>> 32)));
+    }
+
+    static int[] allocHashIndex(int length) {
+        if (length == HASH_INDEX_BASE_LENGTH) {
+            synchronized (ContainerHelpers.class) {
+                if (sHashIndexCacheSize > 0) {
+                    final int[] index = sHashIndexCache[--sHashIndexCacheSize];
+                    sHashIndexCache[sHashIndexCacheSize] = null;
+                    return index;
+                }
+            }
+        } else if (length == HASH_INDEX_BASE_LENGTH * 2) {
+            synchronized (ContainerHelpers.class) {
+                if (sTwiceHashIndexCacheSize > 0) {
+                    final int[] index = sTwiceHashIndexCache[--sTwiceHashIndexCacheSize];
+                    sTwiceHashIndexCache[sTwiceHashIndexCacheSize] = null;
+                    return index;
+                }
+            }
+        }
+        return new int[length];
+    }
+
+    static void freeHashIndex(int[] index) {
+        if (index.length == HASH_INDEX_BASE_LENGTH) {
+            synchronized (ContainerHelpers.class) {
+                if (sHashIndexCacheSize < HASH_INDEX_CACHE_SIZE) {
+                    Arrays.fill(index, 0);
+                    sHashIndexCache[sHashIndexCacheSize++] = index;
+                }
+            }
+        } else if (index.length == HASH_INDEX_BASE_LENGTH * 2) {
+            synchronized (ContainerHelpers.class) {
+                if (sTwiceHashIndexCacheSize < HASH_INDEX_CACHE_SIZE) {
+                    Arrays.fill(index, 0);
+                    sTwiceHashIndexCache[sTwiceHashIndexCacheSize++] = index;
+                }
+            }
+        }
+    }
+
     public static boolean equal(Object a, Object b) {
         return a == b || (a != null && a.equals(b));
     }
 
+    /**
+     * Returns the indices of the first {@code count} keys in ascending key
+     * order. Equal keys keep their relative order.
+     */
+    static int[] sortedOrder(long[] keys, int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        // Bottom-up merge sort, stable so that later duplicates stay later.
+        int[] buffer = new int[count];
+        for (int width = 1; width < count; width <<= 1) {
+            for (int lo = 0; lo < count; lo += width << 1) {
+                final int mid = Math.min(lo + width, count);
+                final int hi = Math.min(lo + (width << 1), count);
+                int i = lo;
+                int j = mid;
+                int o = lo;
+                while (i < mid && j < hi) {
+                    buffer[o++] = keys[order[j]] < keys[order[i]] ? order[j++] : order[i++];
+                }
+                while (i < mid) {
+                    buffer[o++] = order[i++];
+                }
+                while (j < hi) {
+                    buffer[o++] = order[j++];
+                }
+            }
+            final int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+
     // This is Arrays.binarySearch(), but doesn't do any argument validation.
     static int binarySearch(int[] array, int size, int value) {
         int lo = 0;
@@ -356,6 +356,177 @@ public class LongSparseArray<E> implements Cloneable {
         mSize = pos + 1;
     }
 
+    /**
+     * Puts all mappings from {@code other} into this array, replacing the
+     * mappings of keys that are present in both. This merges the two arrays
+     * in a single pass instead of calling {@link #put} for every key.
+     */
+    public void putAll(LongSparseArray<? extends E> other) {
+        if (other.mGarbage) {
+            other.gc();
+        }
+        merge(other.mKeys, other.mValues, other.mSize);
+    }
+
+    /**
+     * Puts the mapping from each of {@code keys} to the value at the same
+     * index of {@code values}. The keys do not need to be sorted; they are
+     * sorted once and merged with this array in a single pass instead of
+     * calling {@link #put} for every key. If a key appears more than once,
+     * the last mapping wins.
+     */
+    public void putAll(long[] keys, E[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys.length != values.length");
+        }
+        final int count = keys.length;
+        if (count == 0) {
+            return;
+        }
+
+        final int[] order = ContainerHelpers.sortedOrder(keys, count);
+        final long[] skeys = new long[count];
+        final Object[] svalues = new Object[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            final long key = keys[order[i]];
+            if (n > 0 && skeys[n - 1] == key) {
+                n--;
+            }
+            skeys[n] = key;
+            svalues[n] = values[order[i]];
+            n++;
+        }
+        merge(skeys, svalues, n);
+    }
+
+    private void merge(long[] keys, Object[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (mGarbage) {
+            gc();
+        }
+
+        final int size = mSize;
+        if (size == 0 || keys[0] > mKeys[size - 1]) {
+            // Everything goes after the existing keys.
+            if (size + count > mKeys.length) {
+                final int n = ContainerHelpers.idealLongArraySize(size + count);
+                final long[] nkeys = new long[n];
+                final Object[] nvalues = new Object[n];
+                System.arraycopy(mKeys, 0, nkeys, 0, size);
+                System.arraycopy(mValues, 0, nvalues, 0, size);
+                mKeys = nkeys;
+                mValues = nvalues;
+            }
+            System.arraycopy(keys, 0, mKeys, size, count);
+            System.arraycopy(values, 0, mValues, size, count);
+            mSize = size + count;
+            return;
+        }
+
+        final int n = ContainerHelpers.idealLongArraySize(size + count);
+        final long[] nkeys = new long[n];
+        final Object[] nvalues = new Object[n];
+        int i = 0;
+        int j = 0;
+        int o = 0;
+        while (i < size || j < count) {
+            if (j >= count || (i < size && mKeys[i] < keys[j])) {
+                nkeys[o] = mKeys[i];
+                nvalues[o++] = mValues[i++];
+            } else {
+                if (i < size && mKeys[i] == keys[j]) {
+                    i++;
+                }
+                nkeys[o] = keys[j];
+                nvalues[o++] = values[j++];
+            }
+        }
+        mKeys = nkeys;
+        mValues = nvalues;
+        mSize = o;
+    }
+
+    /**
+     * Adds {@code count} to every key greater than or equal to
+     * {@code keyStart}, making room for a range of new keys.
+     */
+    public void insertKeyRange(long keyStart, long count) {
+        if (count <= 0) {
+            return;
+        }
+        int i = ContainerHelpers.binarySearch(mKeys, mSize, keyStart);
+        if (i < 0) {
+            i = ~i;
+        }
+        for (; i < mSize; i++) {
+            mKeys[i] += count;
+        }
+    }
+
+    /**
+     * Removes the mappings of the keys from {@code keyStart} to
+     * {@code keyStart + count - 1} and subtracts {@code count} from every
+     * key after that range, closing the gap. This also compacts removed
+     * entries, all in a single pass.
+     */
+    public void removeKeyRange(long keyStart, long count) {
+        if (count <= 0) {
+            return;
+        }
+        final long keyEnd = keyStart + count;
+        final int n = mSize;
+        final long[] keys = mKeys;
+        final Object[] values = mValues;
+        int o = 0;
+        for (int i = 0; i < n; i++) {
+            final Object val = values[i];
+            final long key = keys[i];
+            if (val == DELETED || (key >= keyStart && key < keyEnd)) {
+                continue;
+            }
+            keys[o] = key >= keyEnd ? key - count : key;
+            values[o] = val;
+            o++;
+        }
+        for (int i = o; i < n; i++) {
+            values[i] = null;
+        }
+        mGarbage = false;
+        mSize = o;
+    }
+
+    /**
+     * Returns the index of the greatest key less than or equal to
+     * {@code key}, or a negative number if there is no such key.
+     */
+    public int indexOfFloorKey(long key) {
+        if (mGarbage) {
+            gc();
+        }
+
+        final int i = ContainerHelpers.binarySearch(mKeys, mSize, key);
+        return i >= 0 ? i : ~i - 1;
+    }
+
+    /**
+     * Returns the index of the least key greater than or equal to
+     * {@code key}, or a negative number if there is no such key.
+     */
+    public int indexOfCeilingKey(long key) {
+        if (mGarbage) {
+            gc();
+        }
+
+        final int i = ContainerHelpers.binarySearch(mKeys, mSize, key);
+        if (i >= 0) {
+            return i;
+        }
+        return ~i < mSize ? ~i : -1;
+    }
+
     /**
      * {@inheritDoc}
      *
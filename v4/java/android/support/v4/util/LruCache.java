@@ -16,8 +16,11 @@
 
 package android.support.v4.util;
 
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Static library version of {@link android.util.LruCache}. Used to write apps
@@ -39,6 +42,15 @@ public class LruCache<K, V> {
     private int hitCount;
     private int missCount;
 
+    private AdmissionPolicy<K> admissionPolicy;
+
+    private long expireAfterWriteNanos;
+    private long expireAfterAccessNanos;
+    private long refreshAfterWriteNanos;
+    private Executor refreshExecutor;
+    /** Write and access times of each entry, only kept once any deadline is set. */
+    private HashMap<K, Timestamps> timestamps;
+
     /**
      * @param maxSize for caches that do not override {@link #sizeOf}, this is
      *     the maximum number of entries in the cache. For all other caches,
@@ -68,25 +80,171 @@ public class LruCache<K, V> {
         trimToSize(maxSize);
     }
 
+    /**
+     * Sets the policy that decides whether a newly added entry may displace the
+     * least recently used one when the cache is full. By default every new
+     * entry is admitted, which is plain LRU.
+     * <p>
+     * The policy is asked before a new key is added by {@link #put} or
+     * {@link #get}. A rejected value is not cached and is not passed to
+     * {@link #entryRemoved}; the caller keeps it. Replacing the value of a key
+     * that is already cached is always allowed.
+     *
+     * @param policy The admission policy, or null to admit every entry.
+     * @see FrequencyAdmissionPolicy
+     */
+    public synchronized void setAdmissionPolicy(AdmissionPolicy<K> policy) {
+        admissionPolicy = policy;
+    }
+
+    /**
+     * Returns the admission policy set with {@link #setAdmissionPolicy}, or null.
+     */
+    public synchronized AdmissionPolicy<K> getAdmissionPolicy() {
+        return admissionPolicy;
+    }
+
+    /**
+     * Makes entries expire once {@code duration} has passed since they were
+     * added or last replaced. Expired entries are never returned by
+     * {@link #get}; they are removed and reported to {@link #entryRemoved} as
+     * evictions the next time they are looked up or reach the eldest end of the
+     * queue during {@link #trimToSize}.
+     *
+     * @param duration The time to live of an entry, or 0 to never expire
+     *            entries after a write.
+     * @param unit The unit of {@code duration}.
+     */
+    public synchronized void setExpireAfterWrite(long duration, TimeUnit unit) {
+        expireAfterWriteNanos = toNanos(duration, unit);
+        ensureTimestamps();
+    }
+
+    /**
+     * Makes entries expire once {@code duration} has passed since they were
+     * added or last returned by {@link #get}. See {@link #setExpireAfterWrite}
+     * for when expired entries are removed.
+     *
+     * @param duration The idle time after which an entry expires, or 0 to
+     *            never expire idle entries.
+     * @param unit The unit of {@code duration}.
+     */
+    public synchronized void setExpireAfterAccess(long duration, TimeUnit unit) {
+        expireAfterAccessNanos = toNanos(duration, unit);
+        ensureTimestamps();
+    }
+
+    /**
+     * Reloads entries in the background once {@code duration} has passed since
+     * they were written. The first {@link #get} after that returns the current
+     * value immediately and posts a call to {@link #create} on
+     * {@code executor}; if it returns a value and the entry has not been
+     * replaced or removed in the meantime, the new value replaces the old one,
+     * which is passed to {@link #entryRemoved}. The reload does not count as
+     * an access, so the entry keeps its place in the queue. Use a duration
+     * shorter than the one given to {@link #setExpireAfterWrite} so hot entries
+     * are reloaded before they expire.
+     *
+     * @param duration The age at which an entry is reloaded, or 0 to disable
+     *            refreshing.
+     * @param unit The unit of {@code duration}.
+     * @param executor The executor {@link #create} is called on.
+     */
+    public synchronized void setRefreshAfterWrite(long duration, TimeUnit unit,
+            Executor executor) {
+        final long nanos = toNanos(duration, unit);
+        if (nanos > 0 && executor == null) {
+            throw new NullPointerException("executor == null");
+        }
+        refreshAfterWriteNanos = nanos;
+        refreshExecutor = nanos > 0 ? executor : null;
+        ensureTimestamps();
+    }
+
+    private static long toNanos(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("duration < 0");
+        }
+        return unit.toNanos(duration);
+    }
+
+    private void ensureTimestamps() {
+        if (timestamps == null && (expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0
+                || refreshAfterWriteNanos > 0)) {
+            // Entries added before this point are treated as written now.
+            final long now = System.nanoTime();
+            timestamps = new HashMap<K, Timestamps>();
+            for (K key : map.keySet()) {
+                timestamps.put(key, new Timestamps(now));
+            }
+        }
+    }
+
+    private boolean isExpired(Timestamps stamps, long now) {
+        return (expireAfterWriteNanos > 0 && now - stamps.writeTime >= expireAfterWriteNanos)
+                || (expireAfterAccessNanos > 0
+                        && now - stamps.accessTime >= expireAfterAccessNanos);
+    }
+
     /**
      * Returns the value for {@code key} if it exists in the cache or can be
      * created by {@code #create}. If a value was returned, it is moved to the
      * head of the queue. This returns null if a value is not cached and cannot
      * be created.
      */
-    public final V get(K key) {
+    public final V get(final K key) {
         if (key == null) {
             throw new NullPointerException("key == null");
         }
 
         V mapValue;
+        V expiredValue = null;
+        Executor executor = null;
         synchronized (this) {
+            if (admissionPolicy != null) {
+                admissionPolicy.recordAccess(key);
+            }
             mapValue = map.get(key);
+            if (mapValue != null && timestamps != null) {
+                final long now = System.nanoTime();
+                final Timestamps stamps = timestamps.get(key);
+                if (isExpired(stamps, now)) {
+                    expiredValue = mapValue;
+                    mapValue = null;
+                    map.remove(key);
+                    timestamps.remove(key);
+                    size -= safeSizeOf(key, expiredValue);
+                    evictionCount++;
+                } else {
+                    stamps.accessTime = now;
+                    if (refreshAfterWriteNanos > 0 && !stamps.refreshing
+                            && now - stamps.writeTime >= refreshAfterWriteNanos) {
+                        stamps.refreshing = true;
+                        executor = refreshExecutor;
+                    }
+                }
+            }
             if (mapValue != null) {
                 hitCount++;
-                return mapValue;
+            } else {
+                missCount++;
             }
-            missCount++;
+        }
+
+        if (mapValue != null) {
+            if (executor != null) {
+                final V oldValue = mapValue;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        refresh(key, oldValue);
+                    }
+                });
+            }
+            return mapValue;
+        }
+        if (expiredValue != null) {
+            entryRemoved(true, key, expiredValue, null);
         }
 
         /*
@@ -101,31 +259,58 @@ public class LruCache<K, V> {
             return null;
         }
 
+        boolean admitted = false;
         synchronized (this) {
             createCount++;
-            mapValue = map.put(key, createdValue);
+            mapValue = map.get(key);
 
-            if (mapValue != null) {
-                // There was a conflict so undo that last put
-                map.put(key, mapValue);
-            } else {
+            // If there was a conflict, leave the value that is already cached.
+            if (mapValue == null && shouldAdmit(key, createdValue)) {
+                admitted = true;
+                map.put(key, createdValue);
                 size += safeSizeOf(key, createdValue);
+                if (timestamps != null) {
+                    timestamps.put(key, new Timestamps(System.nanoTime()));
+                }
             }
         }
 
         if (mapValue != null) {
             entryRemoved(false, key, createdValue, mapValue);
             return mapValue;
-        } else {
+        }
+        if (admitted) {
             trimToSize(maxSize);
-            return createdValue;
         }
+        return createdValue;
+    }
+
+    /**
+     * Asks the admission policy whether {@code key} may displace the least
+     * recently used entry, if adding it would make the cache exceed its size.
+     * Called with the lock held, before the entry is added.
+     */
+    private boolean shouldAdmit(K key, V value) {
+        if (admissionPolicy == null || map.isEmpty()
+                || size + safeSizeOf(key, value) <= maxSize) {
+            return true;
+        }
+        final K victim = map.keySet().iterator().next();
+        if (timestamps != null && isExpired(timestamps.get(victim), System.nanoTime())) {
+            // The victim is dropped regardless of the candidate.
+            return true;
+        }
+        return admissionPolicy.admit(key, victim);
     }
 
     /**
      * Caches {@code value} for {@code key}. The value is moved to the head of
      * the queue.
      *
+     * <p>If {@code key} is not cached yet and the {@link AdmissionPolicy}
+     * rejects it, the value is not cached and not passed to
+     * {@link #entryRemoved}.
+     *
      * @return the previous value mapped by {@code key}.
      */
     public final V put(K key, V value) {
@@ -136,11 +321,20 @@ public class LruCache<K, V> {
         V previous;
         synchronized (this) {
             putCount++;
+            if (admissionPolicy != null) {
+                admissionPolicy.recordAccess(key);
+                if (!map.containsKey(key) && !shouldAdmit(key, value)) {
+                    return null;
+                }
+            }
             size += safeSizeOf(key, value);
             previous = map.put(key, value);
             if (previous != null) {
                 size -= safeSizeOf(key, previous);
             }
+            if (timestamps != null) {
+                timestamps.put(key, new Timestamps(System.nanoTime()));
+            }
         }
 
         if (previous != null) {
@@ -168,14 +362,23 @@ public class LruCache<K, V> {
                             + ".sizeOf() is reporting inconsistent results!");
                 }
 
-                if (size <= maxSize || map.isEmpty()) {
+                if (map.isEmpty()) {
                     break;
                 }
 
                 Map.Entry<K, V> toEvict = map.entrySet().iterator().next();
                 key = toEvict.getKey();
                 value = toEvict.getValue();
+                // Expired entries at the eldest end are dropped even if the cache is not full.
+                final boolean expired = timestamps != null
+                        && isExpired(timestamps.get(key), System.nanoTime());
+                if (!expired && size <= maxSize) {
+                    break;
+                }
                 map.remove(key);
+                if (timestamps != null) {
+                    timestamps.remove(key);
+                }
                 size -= safeSizeOf(key, value);
                 evictionCount++;
             }
@@ -199,6 +402,9 @@ public class LruCache<K, V> {
             previous = map.remove(key);
             if (previous != null) {
                 size -= safeSizeOf(key, previous);
+                if (timestamps != null) {
+                    timestamps.remove(key);
+                }
             }
         }
 
@@ -209,6 +415,56 @@ public class LruCache<K, V> {
         return previous;
     }
 
+    private void refresh(K key, V oldValue) {
+        V newValue = null;
+        V currentValue = null;
+        boolean replaced = false;
+        try {
+            newValue = create(key);
+        } finally {
+            synchronized (this) {
+                final Timestamps stamps = timestamps != null ? timestamps.get(key) : null;
+                final Map.Entry<K, V> entry = stamps != null ? findEntry(key) : null;
+                if (entry != null) {
+                    currentValue = entry.getValue();
+                    if (currentValue == oldValue) {
+                        stamps.refreshing = false;
+                        if (newValue != null) {
+                            createCount++;
+                            entry.setValue(newValue);
+                            size += safeSizeOf(key, newValue) - safeSizeOf(key, oldValue);
+                            stamps.writeTime = System.nanoTime();
+                            replaced = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (replaced) {
+            entryRemoved(false, key, oldValue, newValue);
+            trimToSize(maxSize());
+        } else if (newValue != null) {
+            // The entry was replaced or removed while reloading, release the reloaded value.
+            entryRemoved(false, key, newValue, currentValue);
+        }
+    }
+
+    /**
+     * Returns the entry for {@code key} without counting as an access. Both
+     * {@link LinkedHashMap#get} and {@link LinkedHashMap#put} would move the
+     * entry to the head of the queue, which a background refresh must not do.
+     * This is linear, but only runs once per refresh.
+     */
+    private Map.Entry<K, V> findEntry(K key) {
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+            if (key.equals(entry.getKey())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
     /**
      * Called for entries that have been evicted or removed. This method is
      * invoked when a value is evicted to make space, removed by a call to
@@ -240,6 +496,10 @@ public class LruCache<K, V> {
      * at the same time (causing multiple values to be created), or when one
      * thread calls {@link #put} while another is creating a value for the same
      * key.
+     *
+     * <p>If the {@link AdmissionPolicy} rejects the created value, it is
+     * returned by {@link #get} without being cached and is not passed to
+     * {@link #entryRemoved}; the caller owns it.
      */
     protected V create(K key) {
         return null;
@@ -340,4 +600,144 @@ public class LruCache<K, V> {
         return String.format("LruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
                 maxSize, hitCount, missCount, hitPercent);
     }
+
+    /**
+     * Decides whether a new entry is worth keeping at the expense of the least
+     * recently used one. All methods are called while the cache's lock is held,
+     * so implementations need no synchronization of their own and must be fast.
+     */
+    public interface AdmissionPolicy<K> {
+        /**
+         * Called for every {@link #get} and {@link #put} of {@code key}, whether
+         * or not the key is in the cache.
+         */
+        void recordAccess(K key);
+
+        /**
+         * Called before {@code candidate} is added if adding it would make the
+         * cache exceed its size. A rejected value is not cached.
+         *
+         * @param candidate The key that is being added.
+         * @param victim The least recently used key, which is evicted if the
+         *            candidate is admitted.
+         * @return true to add the candidate and evict the victim, false to
+         *         leave the candidate out and keep the victim.
+         */
+        boolean admit(K candidate, K victim);
+    }
+
+    /**
+     * An {@link AdmissionPolicy} that admits a new entry only if its key was
+     * accessed more often than the key it would displace. This keeps a single
+     * scan through many keys that are seen once from flushing out entries that
+     * are used repeatedly.
+     * <p>
+     * Access frequencies are estimated with a count-min sketch of 4-bit
+     * counters, so the policy uses 32 bytes per expected entry regardless of the
+     * number of distinct keys seen. All counters are halved periodically so that
+     * keys which were popular a long time ago age out.
+     */
+    public static class FrequencyAdmissionPolicy<K> implements AdmissionPolicy<K> {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+                0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final int MAX_COUNT = 15;
+
+        private final long[] mTable;
+        private final int mTableMask;
+        private final int mSampleSize;
+        private int mAdditions;
+
+        /**
+         * @param expectedEntries the number of entries the cache is expected to
+         *            hold, which for caches that do not override
+         *            {@link LruCache#sizeOf} is its maximum size.
+         */
+        public FrequencyAdmissionPolicy(int expectedEntries) {
+            if (expectedEntries <= 0) {
+                throw new IllegalArgumentException("expectedEntries <= 0");
+            }
+            int length = 16;
+            while (length < expectedEntries * 4L && length < (1 << 28)) {
+                length <<= 1;
+            }
+            mTable = new long[length];
+            mTableMask = length - 1;
+            mSampleSize = Math.min(expectedEntries, Integer.MAX_VALUE / 10) * 10;
+        }
+
+        @Override
+        public void recordAccess(K key) {
+            final int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                added |= incrementAt(indexOf(hash, i), offsetOf(hash, i));
+            }
+            if (added && ++mAdditions >= mSampleSize) {
+                reset();
+            }
+        }
+
+        @Override
+        public boolean admit(K candidate, K victim) {
+            return frequency(candidate) > frequency(victim);
+        }
+
+        /**
+         * Returns the estimated number of accesses to {@code key}, between 0 and 15.
+         */
+        public int frequency(K key) {
+            final int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int count = (int) ((mTable[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xf);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        private boolean incrementAt(int index, int offset) {
+            long mask = 0xfL << offset;
+            if ((mTable[index] & mask) != mask) {
+                mTable[index] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        private void reset() {
+            for (int i = 0; i < mTable.length; i++) {
+                mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+            }
+            mAdditions /= 2;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return ((int) h) & mTableMask;
+        }
+
+        private static int offsetOf(int hash, int i) {
+            // Each of the four hashes uses its own 4-bit counter within a 64 bit slot.
+            return (((hash >>> (i << 3)) & 3) << 2) + (i << 4);
+        }
+
+        private static int spread(int h) {
+            h ^= (h >>> 20) ^ (h >>> 12);
+            return h ^ (h >>> 7) ^ (h >>> 4);
+        }
+    }
+
+    private static class Timestamps {
+        long writeTime;
+        long accessTime;
+        boolean refreshing;
+
+        Timestamps(long now) {
+            writeTime = now;
+            accessTime = now;
+        }
+    }
 }
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+/**
+ * A map from objects to int values that avoids boxing the values and looks keys
+ * up in constant time.
+ * <p>
+ * Like {@link SimpleArrayMap}, the keys, their hash codes and the values are
+ * kept in dense arrays, so the map can be iterated by index with
+ * {@link #keyAt} and {@link #valueAt}. Entries are kept in insertion order. A
+ * separate open addressing table of indices into those arrays replaces the
+ * binary search over hash codes of {@link SimpleArrayMap}, making {@link #get}
+ * and {@link #put} O(1) on average. Removing an entry other than the last one
+ * shifts the entries after it, like {@link SimpleArrayMap#removeAt}, so that
+ * removing while iterating backwards is safe. Small index tables are recycled
+ * between instances. A null key is allowed.
+ */
+public class ObjectIntMap<K> implements Cloneable {
+    /**
+     * The minimum amount by which the capacity of the map will increase.
+     */
+    private static final int BASE_SIZE = 4;
+
+    private int[] mIndex;
+    private int[] mHashes;
+    private Object[] mKeys;
+    private int[] mValues;
+    private int mSize;
+
+    /**
+     * Creates a new empty map. It will grow once items are added to it.
+     */
+    public ObjectIntMap() {
+        this(0);
+    }
+
+    /**
+     * Creates a new empty map that can hold {@code capacity} mappings without
+     * allocating additional memory.
+     */
+    public ObjectIntMap(int capacity) {
+        mIndex = ContainerHelpers.EMPTY_INTS;
+        mHashes = ContainerHelpers.EMPTY_INTS;
+        mKeys = ContainerHelpers.EMPTY_OBJECTS;
+        mValues = ContainerHelpers.EMPTY_INTS;
+        if (capacity > 0) {
+            ensureCapacity(capacity);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ObjectIntMap<K> clone() {
+        ObjectIntMap<K> clone = null;
+        try {
+            clone = (ObjectIntMap<K>) super.clone();
+            clone.mIndex = mIndex.clone();
+            clone.mHashes = mHashes.clone();
+            clone.mKeys = mKeys.clone();
+            clone.mValues = mValues.clone();
+        } catch (CloneNotSupportedException cnse) {
+            /* ignore */
+        }
+        return clone;
+    }
+
+    /**
+     * Gets the value mapped from the specified key, or 0 if no such mapping
+     * has been made.
+     */
+    public int get(Object key) {
+        return get(key, 0);
+    }
+
+    /**
+     * Gets the value mapped from the specified key, or the specified value
+     * if no such mapping has been made.
+     */
+    public int get(Object key, int valueIfKeyNotFound) {
+        final int index = indexOfKey(key);
+        return index >= 0 ? mValues[index] : valueIfKeyNotFound;
+    }
+
+    /**
+     * Returns true if a mapping exists for the specified key.
+     */
+    public boolean containsKey(Object key) {
+        return indexOfKey(key) >= 0;
+    }
+
+    /**
+     * Adds a mapping from the specified key to the specified value, replacing
+     * the previous mapping from the specified key if there was one.
+     */
+    public void put(K key, int value) {
+        final int hash = key == null ? 0 : key.hashCode();
+        final int index = indexOf(key, hash);
+        if (index >= 0) {
+            mValues[index] = value;
+            return;
+        }
+
+        if (mSize >= mKeys.length) {
+            ensureCapacity(mSize >= (BASE_SIZE * 2) ? (mSize + (mSize >> 1))
+                    : (mSize >= BASE_SIZE ? (BASE_SIZE * 2) : BASE_SIZE));
+        }
+        mHashes[mSize] = hash;
+        mKeys[mSize] = key;
+        mValues[mSize] = value;
+        insertIntoIndex(mSize);
+        mSize++;
+    }
+
+    /**
+     * Removes the mapping from the specified key, if there was any.
+     *
+     * @return true if a mapping was removed.
+     */
+    public boolean remove(Object key) {
+        final int index = indexOfKey(key);
+        if (index >= 0) {
+            removeAt(index);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the mapping at the given index. The mappings after it move down
+     * by one, so this takes time proportional to the size of the map unless it
+     * is the last mapping.
+     */
+    public void removeAt(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        removeFromIndex(index);
+        mSize--;
+        if (index < mSize) {
+            System.arraycopy(mHashes, index + 1, mHashes, index, mSize - index);
+            System.arraycopy(mKeys, index + 1, mKeys, index, mSize - index);
+            System.arraycopy(mValues, index + 1, mValues, index, mSize - index);
+            final int[] table = mIndex;
+            for (int slot = table.length - 1; slot >= 0; slot--) {
+                if (table[slot] > index + 1) {
+                    table[slot]--;
+                }
+            }
+        }
+        mKeys[mSize] = null;
+    }
+
+    /**
+     * Returns the number of key-value mappings that this map currently stores.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns true if this map contains no mappings.
+     */
+    public boolean isEmpty() {
+        return mSize <= 0;
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, returns
+     * the key from the <code>index</code>th key-value mapping that this
+     * map stores. Mappings are kept in insertion order.
+     */
+    @SuppressWarnings("unchecked")
+    public K keyAt(int index) {
+        return (K) mKeys[index];
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, returns
+     * the value from the <code>index</code>th key-value mapping that this
+     * map stores.
+     */
+    public int valueAt(int index) {
+        return mValues[index];
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, sets a new
+     * value for the <code>index</code>th key-value mapping that this
+     * map stores.
+     */
+    public void setValueAt(int index, int value) {
+        mValues[index] = value;
+    }
+
+    /**
+     * Returns the index for which {@link #keyAt} would return the
+     * specified key, or a negative number if the specified
+     * key is not mapped.
+     */
+    public int indexOfKey(Object key) {
+        return indexOf(key, key == null ? 0 : key.hashCode());
+    }
+
+    private int indexOf(Object key, int hash) {
+        if (mSize == 0) {
+            return -1;
+        }
+        final int[] table = mIndex;
+        final int[] hashes = mHashes;
+        final Object[] keys = mKeys;
+        final int mask = table.length - 1;
+        for (int slot = ContainerHelpers.hash(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (hashes[entry - 1] == hash && ContainerHelpers.equal(key, keys[entry - 1])) {
+                return entry - 1;
+            }
+        }
+    }
+
+    /**
+     * Returns an index for which {@link #valueAt} would return the
+     * specified value, or a negative number if no keys map to the
+     * specified value. Beware that this is a linear search, unlike lookups
+     * by key.
+     */
+    public int indexOfValue(int value) {
+        for (int i = 0; i < mSize; i++) {
+            if (mValues[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes all key-value mappings from this map. All storage is released.
+     */
+    public void clear() {
+        if (mIndex.length > 0) {
+            ContainerHelpers.freeHashIndex(mIndex);
+        }
+        mIndex = ContainerHelpers.EMPTY_INTS;
+        mHashes = ContainerHelpers.EMPTY_INTS;
+        mKeys = ContainerHelpers.EMPTY_OBJECTS;
+        mValues = ContainerHelpers.EMPTY_INTS;
+        mSize = 0;
+    }
+
+    /**
+     * Ensures the map can hold at least {@code minimumCapacity} mappings
+     * without allocating additional memory.
+     */
+    public void ensureCapacity(int minimumCapacity) {
+        if (mKeys.length >= minimumCapacity) {
+            return;
+        }
+        final int[] nhashes = new int[minimumCapacity];
+        final Object[] nkeys = new Object[minimumCapacity];
+        final int[] nvalues = new int[minimumCapacity];
+        System.arraycopy(mHashes, 0, nhashes, 0, mSize);
+        System.arraycopy(mKeys, 0, nkeys, 0, mSize);
+        System.arraycopy(mValues, 0, nvalues, 0, mSize);
+        mHashes = nhashes;
+        mKeys = nkeys;
+        mValues = nvalues;
+
+        final int indexLength = ContainerHelpers.hashIndexLength(minimumCapacity);
+        if (mIndex.length != indexLength) {
+            if (mIndex.length > 0) {
+                ContainerHelpers.freeHashIndex(mIndex);
+            }
+            mIndex = ContainerHelpers.allocHashIndex(indexLength);
+            for (int i = 0; i < mSize; i++) {
+                insertIntoIndex(i);
+            }
+        }
+    }
+
+    private void insertIntoIndex(int index) {
+        final int[] table = mIndex;
+        final int mask = table.length - 1;
+        int slot = ContainerHelpers.hash(mHashes[index]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private void removeFromIndex(int index) {
+        final int[] table = mIndex;
+        final int mask = table.length - 1;
+        int hole = ContainerHelpers.hash(mHashes[index]) & mask;
+        while (table[hole] != index + 1) {
+            hole = (hole + 1) & mask;
+        }
+        // Shift back the entries of the probe sequence that would no longer be
+        // reachable once the hole is emptied.
+        for (int slot = (hole + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            final int home = ContainerHelpers.hash(mHashes[table[slot] - 1]) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                table[hole] = table[slot];
+                hole = slot;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation composes a string by iterating over its mappings. If
+     * this map contains itself as a key, the string "(this Map)"
+     * will appear in its place.
+     */
+    @Override
+    public String toString() {
+        if (size() <= 0) {
+            return "{}";
+        }
+
+        StringBuilder buffer = new StringBuilder(mSize * 28);
+        buffer.append('{');
+        for (int i=0; i<mSize; i++) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            Object key = keyAt(i);
+            if (key != this) {
+                buffer.append(key);
+            } else {
+                buffer.append("(this Map)");
+            }
+            buffer.append('=');
+            buffer.append(valueAt(i));
+        }
+        buffer.append('}');
+        return buffer.toString();
+    }
+}
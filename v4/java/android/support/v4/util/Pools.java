@@ -17,6 +17,8 @@
 
 package android.support.v4.util;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Helper class for crating pools of objects. An example use looks like this:
@@ -163,4 +165,230 @@ public final class Pools {
             }
         }
     }
+
+    /**
+     * Pool of objects that can be shared between threads without locking. Instances are kept
+     * in a fixed array of slots that are claimed and filled with compare-and-set operations,
+     * and each thread starts looking at a different slot so that threads rarely touch the same
+     * one. {@link #acquire()} and {@link #release(Object)} only look at a few slots, so their
+     * cost does not grow with the pool size; they may miss an instance or a free slot that is
+     * further away.
+     * <p>
+     * Unlike {@link SimplePool}, releasing an instance that is already in the pool is not
+     * detected.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class LockFreePool<T> implements Pool<T> {
+        /** The number of slots looked at by each acquire or release. */
+        private static final int MAX_PROBES = 4;
+
+        private final AtomicReferenceArray<T> mPool;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max pool size.
+         *
+         * @throws IllegalArgumentException If the max pool size is not greater than zero.
+         */
+        public LockFreePool(int maxPoolSize) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            mPool = new AtomicReferenceArray<T>(maxPoolSize);
+        }
+
+        @Override
+        public T acquire() {
+            final int length = mPool.length();
+            final int start = startIndex(length);
+            final int probes = Math.min(length, MAX_PROBES);
+            for (int i = 0; i < probes; i++) {
+                final int index = (start + i) % length;
+                final T instance = mPool.get(index);
+                if (instance != null && mPool.compareAndSet(index, instance, null)) {
+                    return instance;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean release(T instance) {
+            final int length = mPool.length();
+            final int start = startIndex(length);
+            final int probes = Math.min(length, MAX_PROBES);
+            for (int i = 0; i < probes; i++) {
+                final int index = (start + i) % length;
+                if (mPool.get(index) == null && mPool.compareAndSet(index, null, instance)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int startIndex(int length) {
+            return (int) ((Thread.currentThread().getId() & Integer.MAX_VALUE) % length);
+        }
+    }
+
+    /**
+     * Pool of objects where each thread has a separate {@link SimplePool}. Instances released
+     * on one thread are only acquired again on that thread, so no synchronization is needed,
+     * at the cost of keeping up to the max pool size of instances for every thread that uses
+     * the pool.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class ThreadLocalPool<T> implements Pool<T> {
+        private final ThreadLocal<SimplePool<T>> mPool;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max pool size of each thread.
+         *
+         * @throws IllegalArgumentException If the max pool size is not greater than zero.
+         */
+        public ThreadLocalPool(final int maxPoolSize) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            mPool = new ThreadLocal<SimplePool<T>>() {
+                @Override
+                protected SimplePool<T> initialValue() {
+                    return new SimplePool<T>(maxPoolSize);
+                }
+            };
+        }
+
+        @Override
+        public T acquire() {
+            return mPool.get().acquire();
+        }
+
+        @Override
+        public boolean release(T instance) {
+            return mPool.get().release(instance);
+        }
+    }
+
+    /**
+     * Pool that forwards to another pool and counts how it is used, so that the max pool size
+     * can be chosen from real data. The counters are safe to update from any thread if the
+     * wrapped pool is.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class StatsPool<T> implements Pool<T> {
+        private final Pool<T> mPool;
+        private final AtomicInteger mHitCount = new AtomicInteger();
+        private final AtomicInteger mMissCount = new AtomicInteger();
+        private final AtomicInteger mReleaseCount = new AtomicInteger();
+        private final AtomicInteger mDropCount = new AtomicInteger();
+        private final AtomicInteger mPooledCount = new AtomicInteger();
+        private final AtomicInteger mHighWaterMark = new AtomicInteger();
+
+        /**
+         * Creates a new instance.
+         *
+         * @param pool The pool to forward to.
+         */
+        public StatsPool(Pool<T> pool) {
+            if (pool == null) {
+                throw new NullPointerException("pool == null");
+            }
+            mPool = pool;
+        }
+
+        @Override
+        public T acquire() {
+            final T instance = mPool.acquire();
+            if (instance != null) {
+                mHitCount.incrementAndGet();
+                mPooledCount.decrementAndGet();
+            } else {
+                mMissCount.incrementAndGet();
+            }
+            return instance;
+        }
+
+        @Override
+        public boolean release(T instance) {
+            final boolean pooled = mPool.release(instance);
+            if (pooled) {
+                mReleaseCount.incrementAndGet();
+                final int count = mPooledCount.incrementAndGet();
+                int highWaterMark;
+                while (count > (highWaterMark = mHighWaterMark.get())
+                        && !mHighWaterMark.compareAndSet(highWaterMark, count)) {
+                    // Retry until the high-water mark is at least count.
+                }
+            } else {
+                mDropCount.incrementAndGet();
+            }
+            return pooled;
+        }
+
+        /**
+         * @return The number of times {@link #acquire} returned a pooled instance.
+         */
+        public int getHitCount() {
+            return mHitCount.get();
+        }
+
+        /**
+         * @return The number of times {@link #acquire} returned null.
+         */
+        public int getMissCount() {
+            return mMissCount.get();
+        }
+
+        /**
+         * @return The number of instances {@link #release} put in the pool.
+         */
+        public int getReleaseCount() {
+            return mReleaseCount.get();
+        }
+
+        /**
+         * @return The number of instances {@link #release} dropped because the pool was full.
+         */
+        public int getDropCount() {
+            return mDropCount.get();
+        }
+
+        /**
+         * @return The number of instances currently in the pool.
+         */
+        public int getPooledCount() {
+            return mPooledCount.get();
+        }
+
+        /**
+         * @return The largest number of instances that were in the pool at the same time.
+         */
+        public int getHighWaterMark() {
+            return mHighWaterMark.get();
+        }
+
+        /**
+         * Resets the counters. The high-water mark restarts from the current pooled count.
+         */
+        public void resetStats() {
+            mHitCount.set(0);
+            mMissCount.set(0);
+            mReleaseCount.set(0);
+            mDropCount.set(0);
+            mHighWaterMark.set(mPooledCount.get());
+        }
+
+        @Override
+        public String toString() {
+            return "StatsPool[hits=" + getHitCount() + ",misses=" + getMissCount()
+                    + ",releases=" + getReleaseCount() + ",drops=" + getDropCount()
+                    + ",highWaterMark=" + getHighWaterMark() + "]";
+        }
+    }
 }
@@ -16,6 +16,8 @@
 
 package android.support.v4.util;
 
+import java.util.Arrays;
+
 /**
  * A copy of the current platform (currently {@link android.os.Build.VERSION_CODES#KITKAT}
  * version of {@link android.util.SparseArray}; provides a removeAt() method and other things.
@@ -351,6 +353,184 @@ public class SparseArrayCompat<E> implements Cloneable {
         mSize = pos + 1;
     }
 
+    /**
+     * Puts all mappings from {@code other} into this array, replacing the
+     * mappings of keys that are present in both. This merges the two arrays
+     * in a single pass instead of calling {@link #put} for every key.
+     */
+    public void putAll(SparseArrayCompat<? extends E> other) {
+        if (other.mGarbage) {
+            other.gc();
+        }
+        merge(other.mKeys, other.mValues, other.mSize);
+    }
+
+    /**
+     * Puts the mapping from each of {@code keys} to the value at the same
+     * index of {@code values}. The keys do not need to be sorted; they are
+     * sorted once and merged with this array in a single pass instead of
+     * calling {@link #put} for every key. If a key appears more than once,
+     * the last mapping wins.
+     */
+    public void putAll(int[] keys, E[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys.length != values.length");
+        }
+        final int count = keys.length;
+        if (count == 0) {
+            return;
+        }
+
+        // Sort by key, keeping the original position in the low bits to make
+        // the sort stable.
+        final long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) keys[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        final int[] skeys = new int[count];
+        final Object[] svalues = new Object[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            final int key = (int) (order[i] >> 32);
+            if (n > 0 && skeys[n - 1] == key) {
+                n--;
+            }
+            skeys[n] = key;
+            svalues[n] = values[(int) order[i]];
+            n++;
+        }
+        merge(skeys, svalues, n);
+    }
+
+    private void merge(int[] keys, Object[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (mGarbage) {
+            gc();
+        }
+
+        final int size = mSize;
+        if (size == 0 || keys[0] > mKeys[size - 1]) {
+            // Everything goes after the existing keys.
+            if (size + count > mKeys.length) {
+                final int n = ContainerHelpers.idealIntArraySize(size + count);
+                final int[] nkeys = new int[n];
+                final Object[] nvalues = new Object[n];
+                System.arraycopy(mKeys, 0, nkeys, 0, size);
+                System.arraycopy(mValues, 0, nvalues, 0, size);
+                mKeys = nkeys;
+                mValues = nvalues;
+            }
+            System.arraycopy(keys, 0, mKeys, size, count);
+            System.arraycopy(values, 0, mValues, size, count);
+            mSize = size + count;
+            return;
+        }
+
+        final int n = ContainerHelpers.idealIntArraySize(size + count);
+        final int[] nkeys = new int[n];
+        final Object[] nvalues = new Object[n];
+        int i = 0;
+        int j = 0;
+        int o = 0;
+        while (i < size || j < count) {
+            if (j >= count || (i < size && mKeys[i] < keys[j])) {
+                nkeys[o] = mKeys[i];
+                nvalues[o++] = mValues[i++];
+            } else {
+                if (i < size && mKeys[i] == keys[j]) {
+                    i++;
+                }
+                nkeys[o] = keys[j];
+                nvalues[o++] = values[j++];
+            }
+        }
+        mKeys = nkeys;
+        mValues = nvalues;
+        mSize = o;
+    }
+
+    /**
+     * Adds {@code count} to every key greater than or equal to
+     * {@code keyStart}, making room for a range of new keys.
+     */
+    public void insertKeyRange(int keyStart, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int i = ContainerHelpers.binarySearch(mKeys, mSize, keyStart);
+        if (i < 0) {
+            i = ~i;
+        }
+        for (; i < mSize; i++) {
+            mKeys[i] += count;
+        }
+    }
+
+    /**
+     * Removes the mappings of the keys from {@code keyStart} to
+     * {@code keyStart + count - 1} and subtracts {@code count} from every
+     * key after that range, closing the gap. This also compacts removed
+     * entries, all in a single pass.
+     */
+    public void removeKeyRange(int keyStart, int count) {
+        if (count <= 0) {
+            return;
+        }
+        final long keyEnd = (long) keyStart + count;
+        final int n = mSize;
+        final int[] keys = mKeys;
+        final Object[] values = mValues;
+        int o = 0;
+        for (int i = 0; i < n; i++) {
+            final Object val = values[i];
+            final int key = keys[i];
+            if (val == DELETED || (key >= keyStart && key < keyEnd)) {
+                continue;
+            }
+            keys[o] = key >= keyEnd ? key - count : key;
+            values[o] = val;
+            o++;
+        }
+        for (int i = o; i < n; i++) {
+            values[i] = null;
+        }
+        mGarbage = false;
+        mSize = o;
+    }
+
+    /**
+     * Returns the index of the greatest key less than or equal to
+     * {@code key}, or a negative number if there is no such key.
+     */
+    public int indexOfFloorKey(int key) {
+        if (mGarbage) {
+            gc();
+        }
+
+        final int i = ContainerHelpers.binarySearch(mKeys, mSize, key);
+        return i >= 0 ? i : ~i - 1;
+    }
+
+    /**
+     * Returns the index of the least key greater than or equal to
+     * {@code key}, or a negative number if there is no such key.
+     */
+    public int indexOfCeilingKey(int key) {
+        if (mGarbage) {
+            gc();
+        }
+
+        final int i = ContainerHelpers.binarySearch(mKeys, mSize, key);
+        if (i >= 0) {
+            return i;
+        }
+        return ~i < mSize ? ~i : -1;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** @hide */
+public class ConcurrentLruCacheTest extends AndroidTestCase {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    /** Creates "value-" + key, blocking until {@link #mRelease} is counted down. */
+    static class BlockingCache extends ConcurrentLruCache<String, String> {
+        final CountDownLatch mCreating = new CountDownLatch(1);
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        final AtomicInteger mCreateCalls = new AtomicInteger();
+        final AtomicInteger mRemovedCalls = new AtomicInteger();
+        volatile String mLastRemovedOldValue;
+        volatile String mLastRemovedNewValue;
+
+        BlockingCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected String create(String key) {
+            mCreateCalls.incrementAndGet();
+            mCreating.countDown();
+            try {
+                mRelease.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return new String("value-" + key);
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, String key, String oldValue,
+                String newValue) {
+            mRemovedCalls.incrementAndGet();
+            mLastRemovedOldValue = oldValue;
+            mLastRemovedNewValue = newValue;
+        }
+    }
+
+    /** Calls {@link ConcurrentLruCache#get} on its own thread and keeps the result. */
+    static class Getter extends Thread {
+        final ConcurrentLruCache<String, String> mCache;
+        final String mKey;
+        volatile String mResult;
+
+        Getter(ConcurrentLruCache<String, String> cache, String key) {
+            mCache = cache;
+            mKey = key;
+        }
+
+        @Override
+        public void run() {
+            mResult = mCache.get(mKey);
+        }
+    }
+
+    static void waitForMissCount(ConcurrentLruCache<?, ?> cache, int count) {
+        final long deadline = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        while (cache.missCount() < count && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(10);
+        }
+        assertEquals(count, cache.missCount());
+    }
+
+    public void testConcurrentMissesCreateOnce() throws Exception {
+        final BlockingCache cache = new BlockingCache(10);
+        final Getter[] getters = new Getter[8];
+        for (int i = 0; i < getters.length; i++) {
+            getters[i] = new Getter(cache, "a");
+            getters[i].start();
+        }
+        waitForMissCount(cache, getters.length);
+        cache.mRelease.countDown();
+
+        for (Getter getter : getters) {
+            getter.join(TIMEOUT_MS);
+            assertSame(getters[0].mResult, getter.mResult);
+        }
+        assertEquals("value-a", getters[0].mResult);
+        assertEquals(1, cache.mCreateCalls.get());
+        assertEquals(1, cache.createCount());
+        assertEquals(1, cache.size());
+        assertSame(getters[0].mResult, cache.get("a"));
+        assertEquals(1, cache.mCreateCalls.get());
+    }
+
+    public void testPutDuringCreateWins() throws Exception {
+        final BlockingCache cache = new BlockingCache(10);
+        final Getter creator = new Getter(cache, "a");
+        creator.start();
+        assertTrue(cache.mCreating.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        final Getter waiter = new Getter(cache, "a");
+        waiter.start();
+        waitForMissCount(cache, 2);
+
+        assertNull(cache.put("a", "put"));
+        cache.mRelease.countDown();
+        creator.join(TIMEOUT_MS);
+        waiter.join(TIMEOUT_MS);
+
+        assertEquals("put", creator.mResult);
+        assertEquals("put", waiter.mResult);
+        assertEquals("put", cache.get("a"));
+        assertEquals(1, cache.size());
+        // The created value was released in favour of the one that was put.
+        assertEquals(1, cache.mRemovedCalls.get());
+        assertEquals("value-a", cache.mLastRemovedOldValue);
+        assertEquals("put", cache.mLastRemovedNewValue);
+    }
+
+    public void testCreateCallingGetForItsKeyThrows() {
+        final ConcurrentLruCache<String, String> cache =
+                new ConcurrentLruCache<String, String>(10) {
+                    @Override
+                    protected String create(String key) {
+                        return get(key);
+                    }
+                };
+        try {
+            cache.get("a");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        // The failed creation does not linger.
+        cache.put("a", "put");
+        assertEquals("put", cache.get("a"));
+    }
+
+    public void testEvictionOrderWithOneStripe() {
+        final ConcurrentLruCache<String, String> cache =
+                new ConcurrentLruCache<String, String>(3, 1);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        cache.get("a");
+        cache.put("d", "D");
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals(1, cache.evictionCount());
+    }
+
+    public void testSizeBoundUnderConcurrentPuts() throws Exception {
+        final int maxSize = 100;
+        final int threadCount = 8;
+        final int putsPerThread = 2000;
+        final AtomicInteger evictions = new AtomicInteger();
+        final AtomicInteger maxSeenSize = new AtomicInteger();
+        final ConcurrentLruCache<String, String> cache =
+                new ConcurrentLruCache<String, String>(maxSize) {
+                    @Override
+                    protected void entryRemoved(boolean evicted, String key, String oldValue,
+                            String newValue) {
+                        if (evicted) {
+                            evictions.incrementAndGet();
+                        }
+                    }
+                };
+
+        final Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < putsPerThread; i++) {
+                        cache.put(thread + ":" + i, "v");
+                        // Every put trims, so only the puts racing with this one can push
+                        // the cache over its maximum size.
+                        int size = cache.size();
+                        int seen;
+                        while ((seen = maxSeenSize.get()) < size
+                                && !maxSeenSize.compareAndSet(seen, size)) {
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT_MS * 4);
+        }
+
+        assertTrue(maxSeenSize.get() <= maxSize + threadCount);
+        // Eviction is claimed before removing, so the cache is not trimmed below its maximum.
+        assertEquals(maxSize, cache.size());
+        assertEquals(maxSize, cache.snapshot().size());
+        assertEquals(threadCount * putsPerThread - maxSize, evictions.get());
+        assertEquals(evictions.get(), cache.evictionCount());
+    }
+}
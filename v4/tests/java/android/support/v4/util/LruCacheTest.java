@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/** @hide */
+public class LruCacheTest extends AndroidTestCase {
+
+    /** Creates "created-" + key and records every call to {@link #entryRemoved}. */
+    static class RecordingCache extends LruCache<String, String> {
+        final List<String> mRemoved = new ArrayList<String>();
+
+        RecordingCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected String create(String key) {
+            return "created-" + key;
+        }
+
+        @Override
+        protected synchronized void entryRemoved(boolean evicted, String key, String oldValue,
+                String newValue) {
+            mRemoved.add((evicted ? "evicted " : "removed ") + key + "=" + oldValue);
+        }
+    }
+
+    /** Holds the posted refreshes until the test runs them. */
+    static class QueueExecutor implements Executor {
+        final List<Runnable> mQueue = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            mQueue.add(runnable);
+        }
+
+        void runNext() {
+            mQueue.remove(0).run();
+        }
+    }
+
+    static void assertKeys(LruCache<String, String> cache, String... keys) {
+        assertEquals(Arrays.asList(keys), new ArrayList<String>(cache.snapshot().keySet()));
+    }
+
+    public void testFrequencyEstimate() {
+        final LruCache.FrequencyAdmissionPolicy<String> policy =
+                new LruCache.FrequencyAdmissionPolicy<String>(16);
+        assertEquals(0, policy.frequency("a"));
+        for (int i = 0; i < 3; i++) {
+            policy.recordAccess("a");
+        }
+        assertEquals(3, policy.frequency("a"));
+        for (int i = 0; i < 20; i++) {
+            policy.recordAccess("a");
+        }
+        assertEquals(15, policy.frequency("a"));
+        assertTrue(policy.admit("a", "b"));
+        assertFalse(policy.admit("b", "a"));
+    }
+
+    public void testRejectedPutIsNotCached() {
+        final RecordingCache cache = new RecordingCache(2);
+        cache.setAdmissionPolicy(new LruCache.FrequencyAdmissionPolicy<String>(2));
+        cache.put("a", "A");
+        cache.put("b", "B");
+        for (int i = 0; i < 3; i++) {
+            cache.get("a");
+            cache.get("b");
+        }
+
+        // "c" has been seen once, less often than "a" which it would displace.
+        assertNull(cache.put("c", "C"));
+        assertKeys(cache, "a", "b");
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.evictionCount());
+        assertTrue(cache.mRemoved.isEmpty());
+    }
+
+    public void testFrequentPutIsAdmitted() {
+        final RecordingCache cache = new RecordingCache(2);
+        final LruCache.FrequencyAdmissionPolicy<String> policy =
+                new LruCache.FrequencyAdmissionPolicy<String>(2);
+        cache.setAdmissionPolicy(policy);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        // "c" is seen more often than "a", which it displaces.
+        for (int i = 0; i < 3; i++) {
+            policy.recordAccess("c");
+        }
+
+        assertNull(cache.put("c", "C"));
+        assertKeys(cache, "b", "c");
+        assertEquals(2, cache.size());
+        assertEquals(Arrays.asList("evicted a=A"), cache.mRemoved);
+    }
+
+    public void testReplacingValueIsAlwaysAdmitted() {
+        final RecordingCache cache = new RecordingCache(2);
+        cache.setAdmissionPolicy(new LruCache.FrequencyAdmissionPolicy<String>(2));
+        cache.put("a", "A");
+        cache.put("b", "B");
+        for (int i = 0; i < 3; i++) {
+            cache.get("b");
+        }
+        assertEquals("A", cache.put("a", "A2"));
+        assertKeys(cache, "b", "a");
+        assertEquals("A2", cache.get("a"));
+    }
+
+    public void testRejectedCreatedValueIsReturnedUncached() {
+        final RecordingCache cache = new RecordingCache(2);
+        cache.setAdmissionPolicy(new LruCache.FrequencyAdmissionPolicy<String>(2));
+        cache.put("a", "A");
+        cache.put("b", "B");
+        for (int i = 0; i < 3; i++) {
+            cache.get("a");
+            cache.get("b");
+        }
+
+        assertEquals("created-c", cache.get("c"));
+        assertKeys(cache, "a", "b");
+        assertEquals(1, cache.createCount());
+        assertTrue(cache.mRemoved.isEmpty());
+    }
+
+    public void testExpireAfterWrite() {
+        final RecordingCache cache = new RecordingCache(10);
+        cache.setExpireAfterWrite(100, TimeUnit.MILLISECONDS);
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+
+        SystemClock.sleep(200);
+        assertEquals("created-a", cache.get("a"));
+        assertEquals(Arrays.asList("evicted a=A"), cache.mRemoved);
+        assertEquals(1, cache.evictionCount());
+    }
+
+    public void testExpireAfterAccess() {
+        final RecordingCache cache = new RecordingCache(10);
+        cache.setExpireAfterAccess(300, TimeUnit.MILLISECONDS);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        // Keep "a" alive past the idle time while "b" is left alone.
+        for (int i = 0; i < 4; i++) {
+            SystemClock.sleep(100);
+            assertEquals("A", cache.get("a"));
+        }
+        assertEquals("created-b", cache.get("b"));
+
+        SystemClock.sleep(400);
+        assertEquals("created-a", cache.get("a"));
+        // Adding the created "a" also trims the idle "b" from the eldest end.
+        assertEquals(Arrays.asList("evicted b=B", "evicted a=A", "evicted b=created-b"),
+                cache.mRemoved);
+        assertKeys(cache, "a");
+    }
+
+    public void testExpiredEldestEntriesAreTrimmed() {
+        final RecordingCache cache = new RecordingCache(10);
+        cache.setExpireAfterWrite(100, TimeUnit.MILLISECONDS);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        SystemClock.sleep(200);
+        cache.put("c", "C");
+        assertKeys(cache, "c");
+        assertEquals(1, cache.size());
+    }
+
+    public void testRefreshReplacesValueInPlace() {
+        final RecordingCache cache = new RecordingCache(2);
+        final QueueExecutor executor = new QueueExecutor();
+        cache.setRefreshAfterWrite(10, TimeUnit.MILLISECONDS, executor);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        SystemClock.sleep(50);
+
+        // Both gets return the current value and post a refresh.
+        assertEquals("A", cache.get("a"));
+        assertEquals("B", cache.get("b"));
+        assertEquals(2, executor.mQueue.size());
+        executor.runNext();
+
+        assertEquals("created-a", cache.snapshot().get("a"));
+        assertEquals(Arrays.asList("removed a=A"), cache.mRemoved);
+        // The refresh of "a" is not an access, so it is still the least recently used.
+        assertKeys(cache, "a", "b");
+        cache.put("c", "C");
+        assertKeys(cache, "b", "c");
+    }
+
+    public void testRefreshLosesToConcurrentPut() {
+        final RecordingCache cache = new RecordingCache(10);
+        final QueueExecutor executor = new QueueExecutor();
+        cache.setRefreshAfterWrite(10, TimeUnit.MILLISECONDS, executor);
+        cache.put("a", "A");
+        SystemClock.sleep(50);
+        assertEquals("A", cache.get("a"));
+
+        cache.put("a", "A2");
+        executor.runNext();
+        assertEquals("A2", cache.get("a"));
+        assertEquals(Arrays.asList("removed a=A", "removed a=created-a"), cache.mRemoved);
+    }
+}
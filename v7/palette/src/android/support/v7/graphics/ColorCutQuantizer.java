@@ -41,6 +41,12 @@ import java.util.PriorityQueue;
  * have roughly the same population, where this quantizer divides boxes based on their color volume.
  * This means that the color space is divided into distinct colors, rather than representative
  * colors.
+ *
+ * The quantizer can either work on the exact colors of the image, which are sorted to be
+ * counted, or on colors reduced to {@link #QUANTIZE_WORD_WIDTH} bits per component, which are
+ * counted in a dense histogram in a single pass over the pixels. In the latter case the boxes are
+ * split in the reduced color space and the resulting colors are scaled back to 8 bits per
+ * component.
  */
 final class ColorCutQuantizer {
 
@@ -55,8 +61,22 @@ final class ColorCutQuantizer {
     private static final int COMPONENT_GREEN = -2;
     private static final int COMPONENT_BLUE = -1;
 
+    /**
+     * The number of bits per color component used by the histogram based quantization.
+     */
+    static final int QUANTIZE_WORD_WIDTH = 5;
+
+    private static final int FULL_WORD_WIDTH = 8;
+
+    // the number of bits per component of the colors in mColors
+    private final int mWordWidth;
+    private final int mWordMask;
+
     private final int[] mColors;
+    // exact mode: population of each distinct color
     private final SparseIntArray mColorPopulations;
+    // histogram mode: population of each quantized color, indexed by the color
+    private final int[] mHistogram;
 
     private final List<Swatch> mQuantizedColors;
 
@@ -73,6 +93,23 @@ final class ColorCutQuantizer {
         final int[] pixels = new int[width * height];
         bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
 
+        return fromPixels(pixels, maxColors, false);
+    }
+
+    /**
+     * Factory-method to generate a {@link ColorCutQuantizer} from an array of pixels. The array
+     * may be modified.
+     *
+     * @param pixels The pixel data to quantize
+     * @param maxColors The maximum number of colors that should be in the result palette.
+     * @param useHistogram true to reduce the colors to {@link #QUANTIZE_WORD_WIDTH} bits per
+     *                     component and count them in a histogram, instead of sorting the
+     *                     exact colors.
+     */
+    static ColorCutQuantizer fromPixels(int[] pixels, int maxColors, boolean useHistogram) {
+        if (useHistogram) {
+            return new ColorCutQuantizer(pixels, maxColors);
+        }
         return new ColorCutQuantizer(new ColorHistogram(pixels), maxColors);
     }
 
@@ -83,6 +120,10 @@ final class ColorCutQuantizer {
      * @param maxColors The maximum number of colors that should be in the result palette.
      */
     private ColorCutQuantizer(ColorHistogram colorHistogram, int maxColors) {
+        mWordWidth = FULL_WORD_WIDTH;
+        mWordMask = (1 << FULL_WORD_WIDTH) - 1;
+        mHistogram = null;
+
         final int rawColorCount = colorHistogram.getNumberOfColors();
         final int[] rawColors = colorHistogram.getColors();
         final int[] rawColorCounts = colorHistogram.getColorCounts();
@@ -103,18 +144,67 @@ final class ColorCutQuantizer {
             }
         }
 
-        if (validColorCount <= maxColors) {
+        mQuantizedColors = quantize(validColorCount, maxColors);
+    }
+
+    /**
+     * Private constructor for the histogram based quantization.
+     *
+     * @param pixels the image's pixel data
+     * @param maxColors The maximum number of colors that should be in the result palette.
+     */
+    private ColorCutQuantizer(int[] pixels, int maxColors) {
+        mWordWidth = QUANTIZE_WORD_WIDTH;
+        mWordMask = (1 << QUANTIZE_WORD_WIDTH) - 1;
+        mColorPopulations = null;
+
+        // Count the quantized colors in a single pass
+        final int[] hist = mHistogram = new int[1 << (QUANTIZE_WORD_WIDTH * 3)];
+        for (int i = 0; i < pixels.length; i++) {
+            hist[quantizeFromRgb888(pixels[i])]++;
+        }
+
+        // Drop the colors which we do not want and count the remaining ones
+        int distinctColorCount = 0;
+        for (int color = 0; color < hist.length; color++) {
+            if (hist[color] > 0 && shouldIgnoreColor(approximateToRgb888(color))) {
+                hist[color] = 0;
+            }
+            if (hist[color] > 0) {
+                distinctColorCount++;
+            }
+        }
+
+        mColors = new int[distinctColorCount];
+        int distinctColorIndex = 0;
+        for (int color = 0; color < hist.length; color++) {
+            if (hist[color] > 0) {
+                mColors[distinctColorIndex++] = color;
+            }
+        }
+
+        mQuantizedColors = quantize(distinctColorCount, maxColors);
+    }
+
+    private List<Swatch> quantize(int colorCount, int maxColors) {
+        if (colorCount <= maxColors) {
             // The image has fewer colors than the maximum requested, so just return the colors
-            mQuantizedColors = new ArrayList<Swatch>();
-            for (final int color : mColors) {
-                mQuantizedColors.add(new Swatch(color, mColorPopulations.get(color)));
+            final List<Swatch> swatches = new ArrayList<Swatch>(colorCount);
+            for (int i = 0; i < colorCount; i++) {
+                final int color = mColors[i];
+                swatches.add(new Swatch(approximateToRgb888(color), getPopulation(color)));
             }
+            return swatches;
         } else {
             // We need use quantization to reduce the number of colors
-            mQuantizedColors = quantizePixels(validColorCount - 1, maxColors);
+            return quantizePixels(colorCount - 1, maxColors);
         }
     }
 
+    private int getPopulation(int color) {
+        return mHistogram != null ? mHistogram[color] : mColorPopulations.get(color);
+    }
+
     /**
      * @return the list of quantized colors
      */
@@ -212,14 +302,14 @@ final class ColorCutQuantizer {
          */
         void fitBox() {
             // Reset the min and max to opposite values
-            mMinRed = mMinGreen = mMinBlue = 0xFF;
+            mMinRed = mMinGreen = mMinBlue = mWordMask;
             mMaxRed = mMaxGreen = mMaxBlue = 0x0;
 
             for (int i = mLowerIndex; i <= mUpperIndex; i++) {
                 final int color = mColors[i];
-                final int r = Color.red(color);
-                final int g = Color.green(color);
-                final int b = Color.blue(color);
+                final int r = red(color);
+                final int g = green(color);
+                final int b = blue(color);
                 if (r > mMaxRed) {
                     mMaxRed = r;
                 }
@@ -310,17 +400,17 @@ final class ColorCutQuantizer {
 
                 switch (longestDimension) {
                     case COMPONENT_RED:
-                        if (Color.red(color) >= dimensionMidPoint) {
+                        if (red(color) >= dimensionMidPoint) {
                             return i;
                         }
                         break;
                     case COMPONENT_GREEN:
-                        if (Color.green(color) >= dimensionMidPoint) {
+                        if (green(color) >= dimensionMidPoint) {
                             return i;
                         }
                         break;
                     case COMPONENT_BLUE:
-                        if (Color.blue(color) > dimensionMidPoint) {
+                        if (blue(color) > dimensionMidPoint) {
                             return i;
                         }
                         break;
@@ -341,12 +431,12 @@ final class ColorCutQuantizer {
 
             for (int i = mLowerIndex; i <= mUpperIndex; i++) {
                 final int color = mColors[i];
-                final int colorPopulation = mColorPopulations.get(color);
+                final int colorPopulation = getPopulation(color);
 
                 totalPopulation += colorPopulation;
-                redSum += colorPopulation * Color.red(color);
-                greenSum += colorPopulation * Color.green(color);
-                blueSum += colorPopulation * Color.blue(color);
+                redSum += colorPopulation * toRgb888Component(red(color));
+                greenSum += colorPopulation * toRgb888Component(green(color));
+                blueSum += colorPopulation * toRgb888Component(blue(color));
             }
 
             final int redAverage = Math.round(redSum / (float) totalPopulation);
@@ -379,6 +469,8 @@ final class ColorCutQuantizer {
      * @see Vbox#findSplitPoint()
      */
     private void modifySignificantOctet(final int dimension, int lowerIndex, int upperIndex) {
+        // bits above the color components (i.e. alpha in exact mode) are kept as they are
+        final int otherBits = ~((1 << (mWordWidth * 3)) - 1);
         switch (dimension) {
             case COMPONENT_RED:
                 // Already in RGB, no need to do anything
@@ -387,19 +479,81 @@ final class ColorCutQuantizer {
                 // We need to do a RGB to GRB swap, or vice-versa
                 for (int i = lowerIndex; i <= upperIndex; i++) {
                     final int color = mColors[i];
-                    mColors[i] = Color.rgb((color >> 8) & 0xFF, (color >> 16) & 0xFF, color & 0xFF);
+                    mColors[i] = (color & otherBits) | packColor(green(color), red(color),
+                            blue(color));
                 }
                 break;
             case COMPONENT_BLUE:
                 // We need to do a RGB to BGR swap, or vice-versa
                 for (int i = lowerIndex; i <= upperIndex; i++) {
                     final int color = mColors[i];
-                    mColors[i] = Color.rgb(color & 0xFF, (color >> 8) & 0xFF, (color >> 16) & 0xFF);
+                    mColors[i] = (color & otherBits) | packColor(blue(color), green(color),
+                            red(color));
                 }
                 break;
         }
     }
 
+    private int packColor(int first, int second, int third) {
+        return (first << (mWordWidth * 2)) | (second << mWordWidth) | third;
+    }
+
+    /**
+     * @return the red component of a color in {@link #mColors}
+     */
+    private int red(int color) {
+        return (color >> (mWordWidth * 2)) & mWordMask;
+    }
+
+    /**
+     * @return the green component of a color in {@link #mColors}
+     */
+    private int green(int color) {
+        return (color >> mWordWidth) & mWordMask;
+    }
+
+    /**
+     * @return the blue component of a color in {@link #mColors}
+     */
+    private int blue(int color) {
+        return color & mWordMask;
+    }
+
+    /**
+     * Scales a component of a color in {@link #mColors} to 8 bits, repeating its high bits in the
+     * new low bits so that the maximum value maps to 0xFF.
+     */
+    private int toRgb888Component(int value) {
+        if (mWordWidth == FULL_WORD_WIDTH) {
+            return value;
+        }
+        return (value << (FULL_WORD_WIDTH - mWordWidth))
+                | (value >> (2 * mWordWidth - FULL_WORD_WIDTH));
+    }
+
+    /**
+     * @return the 8 bits per component version of a color in {@link #mColors}
+     */
+    private int approximateToRgb888(int color) {
+        if (mWordWidth == FULL_WORD_WIDTH) {
+            return color;
+        }
+        return Color.rgb(toRgb888Component(red(color)), toRgb888Component(green(color)),
+                toRgb888Component(blue(color)));
+    }
+
+    /**
+     * @return the given 8 bits per component color reduced to {@link #QUANTIZE_WORD_WIDTH} bits
+     * per component
+     */
+    private static int quantizeFromRgb888(int color) {
+        final int shift = FULL_WORD_WIDTH - QUANTIZE_WORD_WIDTH;
+        final int r = Color.red(color) >> shift;
+        final int g = Color.green(color) >> shift;
+        final int b = Color.blue(color) >> shift;
+        return (r << (QUANTIZE_WORD_WIDTH * 2)) | (g << QUANTIZE_WORD_WIDTH) | b;
+    }
+
     private boolean shouldIgnoreColor(int color) {
         ColorUtils.colorToHSL(color, mTempHsl);
         return shouldIgnoreColor(mTempHsl);
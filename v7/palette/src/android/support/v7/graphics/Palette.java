@@ -18,6 +18,7 @@ package android.support.v7.graphics;
 
 import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.graphics.Rect;
 import android.os.AsyncTask;
 import android.support.v4.graphics.ColorUtils;
 import android.support.v4.os.AsyncTaskCompat;
@@ -427,6 +428,10 @@ public final class Palette {
         private Bitmap mBitmap;
         private int mMaxColors = DEFAULT_CALCULATE_NUMBER_COLORS;
         private int mResizeMaxDimension = DEFAULT_RESIZE_BITMAP_MAX_DIMENSION;
+        private boolean mHistogramQuantization = false;
+        private int mSamplingStride = 1;
+        private int mMaxPixelArea = -1;
+        private Rect mRegion;
 
         private Generator mGenerator;
 
@@ -488,6 +493,82 @@ public final class Palette {
             return this;
         }
 
+        /**
+         * Set whether the colors of a {@link android.graphics.Bitmap} source should be reduced to
+         * 5 bits per component (5-5-5) before quantization. The reduced colors are counted in a
+         * fixed-size histogram in one pass over the pixels, instead of sorting a copy of all the
+         * pixels, which makes generation considerably cheaper in CPU time and allocations.
+         * <p>
+         * The resulting swatches are approximations of the image's colors to within the precision
+         * of the reduced color space, which is rarely noticeable. Disabled by default.
+         */
+        public Builder histogramQuantization(boolean enabled) {
+            mHistogramQuantization = enabled;
+            return this;
+        }
+
+        /**
+         * Set a region of the bitmap to be used exclusively when calculating the palette.
+         * <p>This only works when the original input is a {@link Bitmap}.</p>
+         *
+         * @param left The left side of the rectangle used for the region.
+         * @param top The top of the rectangle used for the region.
+         * @param right The right side of the rectangle used for the region.
+         * @param bottom The bottom of the rectangle used for the region.
+         */
+        public Builder setRegion(int left, int top, int right, int bottom) {
+            if (mBitmap != null) {
+                if (mRegion == null) {
+                    mRegion = new Rect();
+                }
+                // Set the Rect to be initially the whole Bitmap
+                mRegion.set(0, 0, mBitmap.getWidth(), mBitmap.getHeight());
+                // Now just get the intersection with the region
+                if (!mRegion.intersect(left, top, right, bottom)) {
+                    throw new IllegalArgumentException("The given region must intersect with "
+                            + "the Bitmap's dimensions.");
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Clear any previously region set via {@link #setRegion(int, int, int, int)}.
+         */
+        public Builder clearRegion() {
+            mRegion = null;
+            return this;
+        }
+
+        /**
+         * Set the stride used to sample the pixels of a {@link android.graphics.Bitmap} source.
+         * Only every {@code stride}-th pixel of every {@code stride}-th row is used.
+         * <p>
+         * When a stride larger than 1 is set, the bitmap is sampled as it is instead of being
+         * resized first, which avoids allocating a scaled copy of the bitmap.
+         */
+        public Builder samplingStride(int stride) {
+            if (stride < 1) {
+                throw new IllegalArgumentException("Sampling stride should be >= 1");
+            }
+            mSamplingStride = stride;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of pixels to analyze when using a
+         * {@link android.graphics.Bitmap} as the source, as an alternative to
+         * {@link #resizeBitmapSize(int)}.
+         * <p>
+         * Instead of resizing the bitmap, the region being analyzed is sampled with the smallest
+         * stride which keeps the number of sampled pixels within {@code area}. Pass a value of
+         * -1 to go back to resizing the bitmap.
+         */
+        public Builder maximumPixelArea(int area) {
+            mMaxPixelArea = area;
+            return this;
+        }
+
         /**
          * Generate and return the {@link Palette} synchronously.
          */
@@ -505,22 +586,32 @@ public final class Palette {
                     throw new IllegalArgumentException(
                             "Minimum dimension size for resizing should should be >= 1");
                 }
+                if (mMaxPixelArea == 0 || mMaxPixelArea < -1) {
+                    throw new IllegalArgumentException(
+                            "Maximum pixel area should be >= 1, or -1 to disable it");
+                }
 
-                // First we'll scale down the bitmap so it's largest dimension is as specified
-                final Bitmap scaledBitmap = scaleBitmapDown(mBitmap, mResizeMaxDimension);
+                // First we'll scale down the bitmap so it's largest dimension is as specified,
+                // unless we are going to sample it instead
+                final boolean sample = mSamplingStride > 1 || mMaxPixelArea > 0;
+                final Bitmap scaledBitmap = sample
+                        ? mBitmap
+                        : scaleBitmapDown(mBitmap, mResizeMaxDimension);
 
                 if (logger != null) {
                     logger.addSplit("Processed Bitmap");
                 }
 
-                // Now generate a quantizer from the Bitmap
-                ColorCutQuantizer quantizer = ColorCutQuantizer
-                        .fromBitmap(scaledBitmap, mMaxColors);
+                final int[] pixels = getPixelsFromBitmap(scaledBitmap);
 
                 // If created a new bitmap, recycle it
                 if (scaledBitmap != mBitmap) {
                     scaledBitmap.recycle();
                 }
+
+                // Now generate a quantizer from the pixels
+                ColorCutQuantizer quantizer = ColorCutQuantizer
+                        .fromPixels(pixels, mMaxColors, mHistogramQuantization);
                 swatches = quantizer.getQuantizedColors();
 
                 if (logger != null) {
@@ -554,6 +645,68 @@ public final class Palette {
             return p;
         }
 
+        /**
+         * Returns the pixels of the region to analyze, sampled with the stride to use. The
+         * region is given in the coordinates of the original bitmap, so it is scaled if the
+         * given bitmap is a scaled copy.
+         */
+        private int[] getPixelsFromBitmap(Bitmap bitmap) {
+            final int bitmapWidth = bitmap.getWidth();
+            final int bitmapHeight = bitmap.getHeight();
+
+            int left = 0;
+            int top = 0;
+            int right = bitmapWidth;
+            int bottom = bitmapHeight;
+            if (mRegion != null) {
+                final double scale = bitmapWidth / (double) mBitmap.getWidth();
+                left = (int) Math.floor(mRegion.left * scale);
+                top = (int) Math.floor(mRegion.top * scale);
+                right = Math.min((int) Math.ceil(mRegion.right * scale), bitmapWidth);
+                bottom = Math.min((int) Math.ceil(mRegion.bottom * scale), bitmapHeight);
+            }
+            final int regionWidth = right - left;
+            final int regionHeight = bottom - top;
+
+            int stride = mSamplingStride;
+            if (mMaxPixelArea > 0) {
+                final double area = regionWidth * (double) regionHeight;
+                stride = Math.max(stride, (int) Math.ceil(Math.sqrt(area / mMaxPixelArea)));
+                // Rounding the sampled size up can still exceed the area, e.g. for thin regions
+                while ((long) sampledLength(regionWidth, stride)
+                        * sampledLength(regionHeight, stride) > mMaxPixelArea) {
+                    stride++;
+                }
+            }
+
+            if (stride == 1) {
+                final int[] pixels = new int[regionWidth * regionHeight];
+                bitmap.getPixels(pixels, 0, regionWidth, left, top, regionWidth, regionHeight);
+                return pixels;
+            }
+
+            // Only read the rows we sample, one at a time
+            final int sampledWidth = sampledLength(regionWidth, stride);
+            final int sampledHeight = sampledLength(regionHeight, stride);
+            final int[] pixels = new int[sampledWidth * sampledHeight];
+            final int[] row = new int[regionWidth];
+            int index = 0;
+            for (int y = 0; y < sampledHeight; y++) {
+                bitmap.getPixels(row, 0, regionWidth, left, top + y * stride, regionWidth, 1);
+                for (int x = 0; x < sampledWidth; x++) {
+                    pixels[index++] = row[x * stride];
+                }
+            }
+            return pixels;
+        }
+
+        /**
+         * Returns the number of pixels sampled along a side of {@code length} pixels.
+         */
+        private static int sampledLength(int length, int stride) {
+            return (length + stride - 1) / stride;
+        }
+
         /**
          * Generate the {@link Palette} asynchronously. The provided listener's
          * {@link PaletteAsyncListener#onGenerated} method will be called with the palette when
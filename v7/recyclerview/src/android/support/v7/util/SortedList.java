@@ -17,6 +17,9 @@
 package android.support.v7.util;
 
 import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 
 /**
  * A Sorted list implementation that can keep items in order and also notify for changes in the
@@ -117,6 +120,299 @@ public class SortedList<T> {
         return add(item, true);
     }
 
+    /**
+     * Adds the given items to the list. Equivalent to calling {@link SortedList#add} in a loop,
+     * except the callback events may be in a different order/granularity since addAll can batch
+     * them for better performance.
+     * <p>
+     * The items are sorted once and then merged into the list in a single pass, so adding
+     * <code>N</code> items to a list of size <code>M</code> takes <code>O(N log N + M)</code>
+     * time instead of shifting the backing array for each item.
+     * <p>
+     * If allowed, may modify the input array and even take the ownership over it in order
+     * to avoid extra memory allocation during sorting and deduplication.
+     * </p>
+     * @param items Array of items to be added into the list.
+     * @param mayModifyInput If true, SortedList is allowed to modify the input.
+     * @see {@link SortedList#addAll(Object[] items)}.
+     */
+    public void addAll(T[] items, boolean mayModifyInput) {
+        if (items.length == 0) {
+            return;
+        }
+        final T[] newItems = mayModifyInput ? items : copyArray(items);
+        final int newSize = sortAndDedup(newItems);
+        final boolean batch = !(mCallback instanceof BatchedCallback);
+        if (batch) {
+            beginBatchedUpdates();
+        }
+        try {
+            if (mSize == 0) {
+                mData = newItems;
+                mSize = newSize;
+                mCallback.onInserted(0, newSize);
+            } else {
+                merge(newItems, newSize);
+            }
+        } finally {
+            if (batch) {
+                endBatchedUpdates();
+            }
+        }
+    }
+
+    /**
+     * Adds the given items to the list. Does not modify the input.
+     *
+     * @see {@link SortedList#addAll(T[] items, boolean mayModifyInput)}
+     *
+     * @param items Array of items to be added into the list.
+     */
+    public void addAll(T... items) {
+        addAll(items, false);
+    }
+
+    /**
+     * Adds the given items to the list. Does not modify the input.
+     *
+     * @see {@link SortedList#addAll(T[] items, boolean mayModifyInput)}
+     *
+     * @param items Collection of items to be added into the list.
+     */
+    public void addAll(Collection<T> items) {
+        T[] copy = (T[]) Array.newInstance(mTClass, items.size());
+        addAll(items.toArray(copy), true);
+    }
+
+    /**
+     * Replaces the current items with the given items, dispatching the minimal set of
+     * {@link Callback#onInserted(int, int)}, {@link Callback#onRemoved(int, int)} and
+     * {@link Callback#onChanged(int, int)} events found in a single merge pass over the old and
+     * the new contents. Consecutive events are coalesced through a {@link BatchedCallback}.
+     * <p>
+     * An item which exists in both lists is matched with
+     * {@link Callback#areItemsTheSame(Object, Object)} and only reported as changed if
+     * {@link Callback#areContentsTheSame(Object, Object)} returns false. An item whose sorting
+     * criteria changed is reported as removed from its old position and inserted at its new one.
+     * <p>
+     * If allowed, may modify the input array and even take the ownership over it in order
+     * to avoid extra memory allocation during sorting and deduplication.
+     *
+     * @param items Array of items to replace the current items.
+     * @param mayModifyInput If true, SortedList is allowed to modify the input.
+     * @see {@link SortedList#replaceAll(Object[] items)}.
+     */
+    public void replaceAll(T[] items, boolean mayModifyInput) {
+        final T[] newItems = mayModifyInput ? items : copyArray(items);
+        final int newSize = sortAndDedup(newItems);
+        final boolean batch = !(mCallback instanceof BatchedCallback);
+        if (batch) {
+            beginBatchedUpdates();
+        }
+        try {
+            replaceAllInternal(newItems, newSize);
+        } finally {
+            if (batch) {
+                endBatchedUpdates();
+            }
+        }
+    }
+
+    /**
+     * Replaces the current items with the given items. Does not modify the input.
+     *
+     * @see {@link SortedList#replaceAll(T[] items, boolean mayModifyInput)}
+     *
+     * @param items Array of items to replace the current items.
+     */
+    public void replaceAll(T... items) {
+        replaceAll(items, false);
+    }
+
+    /**
+     * Replaces the current items with the given items. Does not modify the input.
+     *
+     * @see {@link SortedList#replaceAll(T[] items, boolean mayModifyInput)}
+     *
+     * @param items Collection of items to replace the current items.
+     */
+    public void replaceAll(Collection<T> items) {
+        T[] copy = (T[]) Array.newInstance(mTClass, items.size());
+        replaceAll(items.toArray(copy), true);
+    }
+
+    /**
+     * Merges the given sorted, duplicate-free items into mData. Events are dispatched from the
+     * start of the list to its end, so each position is valid at the time it is reported.
+     */
+    private void merge(T[] newData, int newDataSize) {
+        final T[] oldData = mData;
+        final int oldSize = mSize;
+        final int mergedCapacity = oldSize + newDataSize + CAPACITY_GROWTH;
+        mData = (T[]) Array.newInstance(mTClass, mergedCapacity);
+        mSize = 0;
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldSize || newIndex < newDataSize) {
+            if (oldIndex == oldSize) {
+                // all remaining new items go to the end
+                final int count = newDataSize - newIndex;
+                System.arraycopy(newData, newIndex, mData, mSize, count);
+                mCallback.onInserted(mSize, count);
+                mSize += count;
+                break;
+            }
+            if (newIndex == newDataSize) {
+                // no more new items, copy the remaining old ones
+                final int count = oldSize - oldIndex;
+                System.arraycopy(oldData, oldIndex, mData, mSize, count);
+                mSize += count;
+                break;
+            }
+            final T oldItem = oldData[oldIndex];
+            final T newItem = newData[newIndex];
+            final int cmp = mCallback.compare(oldItem, newItem);
+            if (cmp > 0) {
+                mData[mSize] = newItem;
+                mCallback.onInserted(mSize, 1);
+                mSize++;
+                newIndex++;
+            } else if (cmp == 0 && mCallback.areItemsTheSame(oldItem, newItem)) {
+                mData[mSize] = newItem;
+                if (!mCallback.areContentsTheSame(oldItem, newItem)) {
+                    mCallback.onChanged(mSize, 1);
+                }
+                mSize++;
+                oldIndex++;
+                newIndex++;
+            } else if (cmp == 0 && bringSameItemForward(oldItem, newData, newIndex, newDataSize)) {
+                // the replacement of oldItem is now at newIndex, handled in the next iteration
+                continue;
+            } else {
+                mData[mSize++] = oldItem;
+                oldIndex++;
+            }
+        }
+    }
+
+    private void replaceAllInternal(T[] newData, int newDataSize) {
+        final T[] oldData = mData;
+        final int oldSize = mSize;
+        mData = (T[]) Array.newInstance(mTClass, Math.max(newDataSize, MIN_CAPACITY));
+        mSize = 0;
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldSize || newIndex < newDataSize) {
+            if (oldIndex == oldSize) {
+                final int count = newDataSize - newIndex;
+                System.arraycopy(newData, newIndex, mData, mSize, count);
+                mCallback.onInserted(mSize, count);
+                mSize += count;
+                break;
+            }
+            if (newIndex == newDataSize) {
+                mCallback.onRemoved(mSize, oldSize - oldIndex);
+                break;
+            }
+            final T oldItem = oldData[oldIndex];
+            final T newItem = newData[newIndex];
+            final int cmp = mCallback.compare(oldItem, newItem);
+            if (cmp == 0 && mCallback.areItemsTheSame(oldItem, newItem)) {
+                mData[mSize] = newItem;
+                if (!mCallback.areContentsTheSame(oldItem, newItem)) {
+                    mCallback.onChanged(mSize, 1);
+                }
+                mSize++;
+                oldIndex++;
+                newIndex++;
+            } else if (cmp == 0 && bringSameItemForward(oldItem, newData, newIndex, newDataSize)) {
+                // the replacement of oldItem is now at newIndex, handled in the next iteration
+                continue;
+            } else if (cmp > 0) {
+                mData[mSize] = newItem;
+                mCallback.onInserted(mSize, 1);
+                mSize++;
+                newIndex++;
+            } else {
+                // the old item is not in the new data
+                mCallback.onRemoved(mSize, 1);
+                oldIndex++;
+            }
+        }
+    }
+
+    /**
+     * Sorts the given items and removes the ones which represent the same item, keeping the one
+     * that comes last in the input.
+     *
+     * @return The number of unique items, which are moved to the start of the array.
+     */
+    private int sortAndDedup(T[] items) {
+        if (items.length == 0) {
+            return 0;
+        }
+        // Arrays#sort is stable, so among the same items the last one in the input stays last
+        Arrays.sort(items, mCallback);
+        // items in [rangeStart, rangeEnd) compare equal and are unique
+        int rangeStart = 0;
+        int rangeEnd = 1;
+        for (int i = 1; i < items.length; i++) {
+            final T currentItem = items[i];
+            final int cmp = mCallback.compare(items[rangeStart], currentItem);
+            if (cmp == 0) {
+                final int sameItemPos = findSameItem(currentItem, items, rangeStart, rangeEnd);
+                if (sameItemPos != INVALID_POSITION) {
+                    items[sameItemPos] = currentItem;
+                    continue;
+                }
+            } else {
+                rangeStart = rangeEnd;
+            }
+            items[rangeEnd++] = currentItem;
+        }
+        for (int i = rangeEnd; i < items.length; i++) {
+            items[i] = null;
+        }
+        return rangeEnd;
+    }
+
+    /**
+     * Looks for the same item as the given one among the items after <code>index</code> that
+     * compare equal to it and, if found, swaps it into <code>index</code>. This keeps the items
+     * sorted since the swapped items compare equal.
+     *
+     * @return True if the same item was found and moved to the given index.
+     */
+    private boolean bringSameItemForward(T item, T[] items, int index, int size) {
+        final int sameItemPos = findSameItem(item, items, index + 1, size);
+        if (sameItemPos == INVALID_POSITION) {
+            return false;
+        }
+        final T tmp = items[index];
+        items[index] = items[sameItemPos];
+        items[sameItemPos] = tmp;
+        return true;
+    }
+
+    private int findSameItem(T item, T[] items, int from, int to) {
+        for (int pos = from; pos < to; pos++) {
+            final int cmp = mCallback.compare(items[pos], item);
+            if (cmp != 0) {
+                break;
+            }
+            if (mCallback.areItemsTheSame(items[pos], item)) {
+                return pos;
+            }
+        }
+        return INVALID_POSITION;
+    }
+
+    private T[] copyArray(T[] items) {
+        T[] copy = (T[]) Array.newInstance(mTClass, items.length);
+        System.arraycopy(items, 0, copy, 0, items.length);
+        return copy;
+    }
+
     /**
      * Batches adapter updates that happen between calling this method until calling
      * {@link #endBatchedUpdates()}. For example, if you add multiple items in a loop
@@ -426,7 +722,7 @@ public class SortedList<T> {
      * SortedList calls the callback methods on this class to notify changes about the underlying
      * data.
      */
-    public static abstract class Callback<T2> {
+    public static abstract class Callback<T2> implements Comparator<T2> {
 
         /**
          * Similar to {@link java.util.Comparator#compare(Object, Object)}, should compare two and
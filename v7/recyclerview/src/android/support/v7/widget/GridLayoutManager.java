@@ -174,27 +174,28 @@ public class GridLayoutManager extends LinearLayoutManager {
 
     @Override
     public void onItemsAdded(RecyclerView recyclerView, int positionStart, int itemCount) {
-        mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateCachesFrom(positionStart);
     }
 
     @Override
     public void onItemsChanged(RecyclerView recyclerView) {
         mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateSpanGroupIndexCache();
     }
 
     @Override
     public void onItemsRemoved(RecyclerView recyclerView, int positionStart, int itemCount) {
-        mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateCachesFrom(positionStart);
     }
 
     @Override
     public void onItemsUpdated(RecyclerView recyclerView, int positionStart, int itemCount) {
-        mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateCachesFrom(positionStart);
     }
 
     @Override
     public void onItemsMoved(RecyclerView recyclerView, int from, int to, int itemCount) {
-        mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateCachesFrom(Math.min(from, to));
     }
 
     @Override
@@ -586,6 +587,7 @@ public class GridLayoutManager extends LinearLayoutManager {
         }
         mSpanCount = spanCount;
         mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateSpanGroupIndexCache();
     }
 
     /**
@@ -597,10 +599,28 @@ public class GridLayoutManager extends LinearLayoutManager {
      */
     public static abstract class SpanSizeLookup {
 
+        /**
+         * The span group index cache keeps a checkpoint at the first position of a span group
+         * once every this many positions.
+         */
+        static final int SPAN_GROUP_CHECKPOINT_INTERVAL = 32;
+
         final SparseIntArray mSpanIndexCache = new SparseIntArray();
 
+        /**
+         * Maps the first position of a span group to the index of that group.
+         */
+        final SparseIntArray mSpanGroupIndexCache = new SparseIntArray();
+
         private boolean mCacheSpanIndices = false;
 
+        private boolean mCacheSpanGroupIndices = false;
+
+        /**
+         * The span count the span group index cache was computed for.
+         */
+        private int mSpanGroupIndexCacheSpanCount = -1;
+
         /**
          * Returns the number of span occupied by the item at <code>position</code>.
          *
@@ -637,6 +657,59 @@ public class GridLayoutManager extends LinearLayoutManager {
             return mCacheSpanIndices;
         }
 
+        /**
+         * Sets whether {@link #getSpanGroupIndex(int, int)} should cache its intermediate results
+         * or not. By default they are not cached and each call traverses all items from 0 to the
+         * given position. When caching is enabled, the traversal starts from the closest
+         * checkpoint before the position, which makes queries for far positions (e.g. the row
+         * count for accessibility) cheap on large data sets.
+         * <p>
+         * If you are overriding {@link #getSpanGroupIndex(int, int)}, this setting has no effect.
+         *
+         * @param cacheSpanGroupIndices Whether results of getSpanGroupIndex should be cached or
+         *                              not.
+         */
+        public void setSpanGroupIndexCacheEnabled(boolean cacheSpanGroupIndices) {
+            if (!cacheSpanGroupIndices) {
+                mSpanGroupIndexCache.clear();
+            }
+            mCacheSpanGroupIndices = cacheSpanGroupIndices;
+        }
+
+        /**
+         * Clears the span group index cache. GridLayoutManager automatically calls this method
+         * when adapter changes occur.
+         */
+        public void invalidateSpanGroupIndexCache() {
+            mSpanGroupIndexCache.clear();
+        }
+
+        /**
+         * Returns whether results of {@link #getSpanGroupIndex(int, int)} method are cached or
+         * not.
+         *
+         * @return True if results of {@link #getSpanGroupIndex(int, int)} are cached.
+         */
+        public boolean isSpanGroupIndexCacheEnabled() {
+            return mCacheSpanGroupIndices;
+        }
+
+        /**
+         * Drops the cached span indices and span group indices of the given position and the
+         * positions after it. Values cached for earlier positions only depend on the items before
+         * them, so they stay valid when the adapter changes at or after the given position.
+         */
+        void invalidateCachesFrom(int position) {
+            removeKeysFrom(mSpanIndexCache, position);
+            removeKeysFrom(mSpanGroupIndexCache, position);
+        }
+
+        private static void removeKeysFrom(SparseIntArray cache, int position) {
+            for (int i = cache.size() - 1; i >= 0 && cache.keyAt(i) >= position; i--) {
+                cache.delete(cache.keyAt(i));
+            }
+        }
+
         int getCachedSpanIndex(int position, int spanCount) {
             if (!mCacheSpanIndices) {
                 return getSpanIndex(position, spanCount);
@@ -705,12 +778,20 @@ public class GridLayoutManager extends LinearLayoutManager {
         }
 
         int findReferenceIndexFromCache(int position) {
+            return findFirstKeyLessThan(mSpanIndexCache, position);
+        }
+
+        /**
+         * Returns the largest key in the cache which is less than the given position, or -1 if
+         * there is no such key.
+         */
+        static int findFirstKeyLessThan(SparseIntArray cache, int position) {
             int lo = 0;
-            int hi = mSpanIndexCache.size() - 1;
+            int hi = cache.size() - 1;
 
             while (lo <= hi) {
                 final int mid = (lo + hi) >>> 1;
-                final int midVal = mSpanIndexCache.keyAt(mid);
+                final int midVal = cache.keyAt(mid);
                 if (midVal < position) {
                     lo = mid + 1;
                 } else {
@@ -718,8 +799,8 @@ public class GridLayoutManager extends LinearLayoutManager {
                 }
             }
             int index = lo - 1;
-            if (index >= 0 && index < mSpanIndexCache.size()) {
-                return mSpanIndexCache.keyAt(index);
+            if (index >= 0 && index < cache.size()) {
+                return cache.keyAt(index);
             }
             return -1;
         }
@@ -729,6 +810,11 @@ public class GridLayoutManager extends LinearLayoutManager {
          * <p>
          * For example, if grid has 3 columns and each item occupies 1 span, span group index
          * for item 1 will be 0, item 5 will be 1.
+         * <p>
+         * When the span group index cache is enabled
+         * ({@link #setSpanGroupIndexCacheEnabled(boolean)}), the traversal starts from the
+         * closest cached span group before <code>adapterPosition</code> and new checkpoints are
+         * recorded along the way.
          *
          * @param adapterPosition The position in adapter
          * @param spanCount The total number of spans in the grid
@@ -737,17 +823,40 @@ public class GridLayoutManager extends LinearLayoutManager {
         public int getSpanGroupIndex(int adapterPosition, int spanCount) {
             int span = 0;
             int group = 0;
+            int startPos = 0;
             int positionSpanSize = getSpanSize(adapterPosition);
-            for (int i = 0; i < adapterPosition; i++) {
+            if (mCacheSpanGroupIndices) {
+                if (mSpanGroupIndexCacheSpanCount != spanCount) {
+                    mSpanGroupIndexCache.clear();
+                    mSpanGroupIndexCacheSpanCount = spanCount;
+                }
+                // cached positions start a group, so their span index is 0
+                final int prevKey = findFirstKeyLessThan(mSpanGroupIndexCache,
+                        adapterPosition + 1);
+                if (prevKey >= 0) {
+                    group = mSpanGroupIndexCache.get(prevKey);
+                    startPos = prevKey;
+                }
+            }
+            int lastCheckpoint = startPos;
+            for (int i = startPos; i < adapterPosition; i++) {
                 int size = getSpanSize(i);
                 span += size;
+                int groupStart = -1;
                 if (span == spanCount) {
                     span = 0;
                     group++;
+                    groupStart = i + 1;
                 } else if (span > spanCount) {
                     // did not fit, moving to next row / column
                     span = size;
                     group++;
+                    groupStart = i;
+                }
+                if (mCacheSpanGroupIndices && groupStart != -1
+                        && groupStart - lastCheckpoint >= SPAN_GROUP_CHECKPOINT_INTERVAL) {
+                    mSpanGroupIndexCache.put(groupStart, group);
+                    lastCheckpoint = groupStart;
                 }
             }
             if (span + positionSpanSize > spanCount) {
@@ -757,6 +866,33 @@ public class GridLayoutManager extends LinearLayoutManager {
         }
     }
 
+    /**
+     * GridLayoutManager prefetches the row that will be laid out next, which has at most
+     * {@link #getSpanCount()} items.
+     */
+    @Override
+    public int getItemPrefetchCount() {
+        return mSpanCount;
+    }
+
+    @Override
+    int gatherPrefetchIndicesFrom(int position, int itemDirection, RecyclerView.State state,
+            int[] outIndices) {
+        final int itemCount = state.getItemCount();
+        int remainingSpan = mSpanCount;
+        int count = 0;
+        while (count < mSpanCount && position >= 0 && position < itemCount) {
+            final int spanSize = mSpanSizeLookup.getSpanSize(position);
+            if (spanSize > remainingSpan) {
+                break; // the item belongs to the row after the next one
+            }
+            remainingSpan -= spanSize;
+            outIndices[count++] = position;
+            position += itemDirection;
+        }
+        return count;
+    }
+
     @Override
     public boolean supportsPredictiveItemAnimations() {
         return mPendingSavedState == null;
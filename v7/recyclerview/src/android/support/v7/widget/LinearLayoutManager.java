@@ -124,6 +124,12 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 
     private boolean mRecycleChildrenOnDetach;
 
+    /**
+     * Number of items to prefetch when this LayoutManager belongs to a RecyclerView which is
+     * nested in another scrolling RecyclerView.
+     */
+    private int mInitialPrefetchItemCount = 2;
+
     SavedState mPendingSavedState = null;
 
     /**
@@ -190,6 +196,40 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
         mRecycleChildrenOnDetach = recycleChildrenOnDetach;
     }
 
+    /**
+     * Sets the number of items to prefetch in
+     * {@link #gatherInitialPrefetchIndices(int, int[])}, which is called when the RecyclerView
+     * using this LayoutManager is nested in another RecyclerView and is about to scroll into
+     * view.
+     * <p>
+     * For example, if this LayoutManager belongs to a horizontally scrolling row in a vertical
+     * list and 3.5 items are visible in the row, setting this to 4 allows the row to be fully
+     * populated before it is attached, instead of creating its items in the frame it becomes
+     * visible. Set it to 0 to disable nested prefetching for this LayoutManager.
+     * <p>
+     * The default value is 2.
+     *
+     * @param itemCount Number of items to prefetch
+     * @see #getInitialPrefetchItemCount()
+     */
+    public void setInitialPrefetchItemCount(int itemCount) {
+        if (itemCount < 0) {
+            throw new IllegalArgumentException("Initial prefetch item count cannot be negative");
+        }
+        mInitialPrefetchItemCount = itemCount;
+    }
+
+    /**
+     * Gets the number of items to prefetch when this LayoutManager's RecyclerView is nested in
+     * another RecyclerView.
+     *
+     * @return Number of items to prefetch
+     * @see #setInitialPrefetchItemCount(int)
+     */
+    public int getInitialPrefetchItemCount() {
+        return mInitialPrefetchItemCount;
+    }
+
     @Override
     public void onDetachedFromWindow(RecyclerView view, RecyclerView.Recycler recycler) {
         super.onDetachedFromWindow(view, recycler);
@@ -1756,6 +1796,78 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
         return mPendingSavedState == null && mLastStackFromEnd == mStackFromEnd;
     }
 
+    /**
+     * LinearLayoutManager prefetches the item that will be laid out next in the scroll direction.
+     */
+    @Override
+    public int getItemPrefetchCount() {
+        return 1;
+    }
+
+    @Override
+    public int getInitialPrefetchCount() {
+        return mInitialPrefetchItemCount;
+    }
+
+    @Override
+    public int gatherInitialPrefetchIndices(int adapterItemCount, int[] outIndices) {
+        final int anchorPos;
+        if (mPendingScrollPosition != NO_POSITION) {
+            anchorPos = mPendingScrollPosition;
+        } else if (mPendingSavedState != null && mPendingSavedState.hasValidAnchor()) {
+            anchorPos = mPendingSavedState.mAnchorPosition;
+        } else {
+            anchorPos = mStackFromEnd ? adapterItemCount - 1 : 0;
+        }
+        // the first layout fills away from the anchor, towards the start when stacking from end
+        final int itemDirection = mStackFromEnd ? LayoutState.ITEM_DIRECTION_HEAD
+                : LayoutState.ITEM_DIRECTION_TAIL;
+        int count = 0;
+        int position = anchorPos;
+        while (count < mInitialPrefetchItemCount && position >= 0
+                && position < adapterItemCount) {
+            outIndices[count++] = position;
+            position += itemDirection;
+        }
+        return count;
+    }
+
+    @Override
+    public int gatherPrefetchIndices(int dx, int dy, RecyclerView.State state, int[] outIndices) {
+        final int delta = mOrientation == HORIZONTAL ? dx : dy;
+        if (getChildCount() == 0 || delta == 0) {
+            // can't support this scroll, so don't bother prefetching
+            return 0;
+        }
+        final boolean layoutToEnd = delta > 0;
+        // get the first child in the direction we are going
+        final View child = layoutToEnd ? getChildClosestToEnd() : getChildClosestToStart();
+        // the direction in which we are traversing children
+        final int itemDirection = mShouldReverseLayout == layoutToEnd
+                ? LayoutState.ITEM_DIRECTION_HEAD : LayoutState.ITEM_DIRECTION_TAIL;
+        return gatherPrefetchIndicesFrom(getPosition(child) + itemDirection, itemDirection, state,
+                outIndices);
+    }
+
+    /**
+     * Fills the given array with the adapter positions to prefetch, starting from the position
+     * that will be laid out next.
+     *
+     * @param position The adapter position that will be laid out next
+     * @param itemDirection The direction in which the adapter positions are traversed
+     * @param state Transient state of RecyclerView
+     * @param outIndices The array to fill
+     * @return The number of positions written into outIndices
+     */
+    int gatherPrefetchIndicesFrom(int position, int itemDirection, RecyclerView.State state,
+            int[] outIndices) {
+        if (position < 0 || position >= state.getItemCount()) {
+            return 0;
+        }
+        outIndices[0] = position;
+        return 1;
+    }
+
     /**
      * Helper class that keeps temporary state while {LayoutManager} is filling out the empty
      * space.
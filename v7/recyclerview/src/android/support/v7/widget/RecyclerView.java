@@ -28,6 +28,7 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.Nullable;
 import android.support.v4.util.ArrayMap;
+import android.support.v4.util.LongObjectMap;
 import android.support.v4.view.InputDeviceCompat;
 import android.support.v4.view.MotionEventCompat;
 import android.support.v4.view.ScrollingView;
@@ -45,8 +46,8 @@ import static android.support.v7.widget.AdapterHelper.Callback;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.SparseArray;
-import android.util.SparseIntArray;
 import android.util.TypedValue;
+import android.view.Display;
 import android.view.FocusFinder;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
@@ -54,13 +55,17 @@ import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.WindowManager;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityManager;
 import android.view.animation.Interpolator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A flexible view for providing a limited window into a large data set.
@@ -142,6 +147,24 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
     private static final boolean FORCE_INVALIDATE_DISPLAY_LIST = Build.VERSION.SDK_INT == 18
             || Build.VERSION.SDK_INT == 19 || Build.VERSION.SDK_INT == 20;
 
+    /**
+     * Prefetching item views between frames only pays off when drawing happens on the render
+     * thread, which leaves the UI thread idle until the next frame. Before Lollipop, the UI thread
+     * is busy with rendering after the traversal so we do not prefetch.
+     */
+    static final boolean ALLOW_PREFETCHING = Build.VERSION.SDK_INT >= 21;
+
+    /**
+     * Prefetching is skipped if there is less than this much time left until the next frame.
+     */
+    private static final long MIN_PREFETCH_TIME_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    /**
+     * The duration of a frame in nanoseconds, calculated from the refresh rate of the display
+     * when the first RecyclerView is attached.
+     */
+    static long sFrameIntervalNanos = 0;
+
     private static final boolean DISPATCH_TEMP_DETACH = false;
     public static final int HORIZONTAL = 0;
     public static final int VERTICAL = 1;
@@ -287,6 +310,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
 
     private final ViewFlinger mViewFlinger = new ViewFlinger();
 
+    final ViewPrefetcher mViewPrefetcher = ALLOW_PREFETCHING ? new ViewPrefetcher() : null;
+
     final State mState = new State();
 
     private OnScrollListener mScrollListener;
@@ -489,8 +514,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             }
 
             @Override
-            public void markViewHoldersUpdated(int positionStart, int itemCount) {
-                viewRangeUpdate(positionStart, itemCount);
+            public void markViewHoldersUpdated(int positionStart, int itemCount, Object payload) {
+                viewRangeUpdate(positionStart, itemCount, payload);
                 mItemsChanged = true;
             }
 
@@ -508,7 +533,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                         mLayout.onItemsRemoved(RecyclerView.this, op.positionStart, op.itemCount);
                         break;
                     case UpdateOp.UPDATE:
-                        mLayout.onItemsUpdated(RecyclerView.this, op.positionStart, op.itemCount);
+                        mLayout.onItemsUpdated(RecyclerView.this, op.positionStart, op.itemCount,
+                                op.payload);
                         break;
                     case UpdateOp.MOVE:
                         mLayout.onItemsMoved(RecyclerView.this, op.positionStart, op.itemCount, 1);
@@ -733,6 +759,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                 mLayout.onAttachedToWindow(this);
             }
         }
+        mRecycler.mNestedPrefetchCount = 0;
+        mRecycler.updateViewCacheSize();
         requestLayout();
     }
 
@@ -831,6 +859,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
      * displayed by a {@link android.support.v4.view.ViewPager ViewPager}.
      *
      * @param pool Pool to set. If this parameter is null a new pool will be created and used.
+     * @see RecycledViewPool#getSharedPool(Context)
      */
     public void setRecycledViewPool(RecycledViewPool pool) {
         mRecycler.setRecycledViewPool(pool);
@@ -1530,7 +1559,24 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         if (mLayout != null) {
             mLayout.onAttachedToWindow(this);
         }
+        mRecycler.updatePoolAttachment();
         mPostedAnimatorRunner = false;
+        if (ALLOW_PREFETCHING && sFrameIntervalNanos == 0) {
+            // We only calculate the frame interval once, assuming all RecyclerViews are shown on
+            // displays with the same refresh rate.
+            float refreshRate = 60.0f;
+            if (!isInEditMode()) {
+                final WindowManager windowManager = (WindowManager) getContext()
+                        .getSystemService(Context.WINDOW_SERVICE);
+                final Display display = windowManager.getDefaultDisplay();
+                final float displayRefreshRate = display.getRefreshRate();
+                if (displayRefreshRate >= 30.0f) {
+                    // break 60 fps assumption if data appears good
+                    refreshRate = displayRefreshRate;
+                }
+            }
+            sFrameIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate);
+        }
     }
 
     @Override
@@ -1546,7 +1592,12 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         if (mLayout != null) {
             mLayout.onDetachedFromWindow(this, mRecycler);
         }
+        // after the layout manager may have recycled its children into the pool
+        mRecycler.updatePoolAttachment();
         removeCallbacks(mItemAnimatorRunner);
+        if (mViewPrefetcher != null) {
+            removeCallbacks(mViewPrefetcher);
+        }
     }
 
     /**
@@ -1803,6 +1854,10 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                             canScrollHorizontally ? -dx : 0, canScrollVertically ? -dy : 0)) {
                         getParent().requestDisallowInterceptTouchEvent(true);
                     }
+                    if (mViewPrefetcher != null && (dx != 0 || dy != 0)) {
+                        mViewPrefetcher.postFromTraversal(canScrollHorizontally ? -dx : 0,
+                                canScrollVertically ? -dy : 0);
+                    }
                 }
                 mLastTouchX = x;
                 mLastTouchY = y;
@@ -2105,7 +2160,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         processAdapterUpdatesAndSetAnimationFlags();
 
         mState.mOldChangedHolders = mState.mRunSimpleAnimations && mItemsChanged
-                && supportsChangeAnimations() ? new ArrayMap<Long, ViewHolder>() : null;
+                && supportsChangeAnimations() ? new LongObjectMap<ViewHolder>() : null;
         mItemsAddedOrRemoved = mItemsChanged = false;
         ArrayMap<View, Rect> appearingViewInitialBounds = null;
         mState.mInPreLayout = mState.mRunPredictiveAnimations;
@@ -2207,8 +2262,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
 
         if (mState.mRunSimpleAnimations) {
             // Step 3: Find out where things are now, post-layout
-            ArrayMap<Long, ViewHolder> newChangedHolders = mState.mOldChangedHolders != null ?
-                    new ArrayMap<Long, ViewHolder>() : null;
+            LongObjectMap<ViewHolder> newChangedHolders = mState.mOldChangedHolders != null ?
+                    new LongObjectMap<ViewHolder>() : null;
             int count = mChildHelper.getChildCount();
             for (int i = 0; i < count; ++i) {
                 ViewHolder holder = getChildViewHolderInt(mChildHelper.getChildAt(i));
@@ -2306,6 +2361,11 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mRecycler.mChangedScrap.clear();
         }
         mState.mOldChangedHolders = null;
+        if (mRecycler.mNestedPrefetchCount != 0) {
+            // the views prefetched while nested have been laid out, give their room back
+            mRecycler.mNestedPrefetchCount = 0;
+            mRecycler.updateViewCacheSize();
+        }
 
         if (didChildRangeChange(mMinMaxLayoutPositions[0], mMinMaxLayoutPositions[1])) {
             notifyOnScrolled(0, 0);
@@ -2725,11 +2785,16 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
 
     /**
      * Rebind existing views for the given range, or create as needed.
+     * <p>
+     * If a payload is provided, the ViewHolders are rebound in place and do not run a change
+     * animation, unless another update without a payload arrives for them before they are
+     * rebound.
      *
      * @param positionStart Adapter position to start at
      * @param itemCount Number of views that must explicitly be rebound
+     * @param payload Optional payload for a partial bind, or null for a full rebind
      */
-    void viewRangeUpdate(int positionStart, int itemCount) {
+    void viewRangeUpdate(int positionStart, int itemCount, Object payload) {
         final int childCount = mChildHelper.getUnfilteredChildCount();
         final int positionEnd = positionStart + itemCount;
 
@@ -2743,7 +2808,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                 // We re-bind these view holders after pre-processing is complete so that
                 // ViewHolders have their final positions assigned.
                 holder.addFlags(ViewHolder.FLAG_UPDATE);
-                if (supportsChangeAnimations()) {
+                holder.addChangePayload(payload);
+                if (payload == null && supportsChangeAnimations()) {
                     holder.addFlags(ViewHolder.FLAG_CHANGED);
                 }
                 // lp cannot be null since we get ViewHolder from it.
@@ -2810,6 +2876,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             final ViewHolder holder = getChildViewHolderInt(mChildHelper.getUnfilteredChildAt(i));
             if (holder != null && !holder.shouldIgnore()) {
                 holder.addFlags(ViewHolder.FLAG_UPDATE | ViewHolder.FLAG_INVALID);
+                holder.addChangePayload(null);
             }
         }
         markItemDecorInsetsDirty();
@@ -3227,6 +3294,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                     setScrollState(SCROLL_STATE_IDLE); // setting state to idle will stop this.
                 } else {
                     postOnAnimation();
+                    if (mViewPrefetcher != null) {
+                        mViewPrefetcher.postFromTraversal(dx, dy);
+                    }
                 }
             }
             // call this after the onAnimation is complete not to have inconsistent callbacks etc.
@@ -3323,6 +3393,119 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
 
     }
 
+    /**
+     * Creates and binds the item views that are about to be scrolled into the viewport, using the
+     * idle time on the UI thread between the end of a frame and the start of the next one.
+     * <p>
+     * After each scroll frame, the prefetcher is posted with the scroll delta of that frame. When
+     * it runs, it asks the {@link LayoutManager} for the adapter positions that will be laid out
+     * next (see {@link LayoutManager#gatherPrefetchIndices(int, int, State, int[])}) and puts
+     * their ViewHolders into the Recycler's view cache, so that the next frame only needs to
+     * attach them.
+     * <p>
+     * If a prefetched item contains a RecyclerView, that RecyclerView's first items are
+     * prefetched as well (see {@link LayoutManager#gatherInitialPrefetchIndices(int, int[])}).
+     */
+    class ViewPrefetcher implements Runnable {
+        private int mDx;
+        private int mDy;
+        int[] mItemPrefetchArray;
+
+        /**
+         * Schedules a prefetch pass after the current frame.
+         *
+         * @param dx The horizontal scroll delta of the current frame
+         * @param dy The vertical scroll delta of the current frame
+         */
+        void postFromTraversal(int dx, int dy) {
+            if (mIsAttached && mAdapter != null && mLayout != null
+                    && mLayout.isItemPrefetchEnabled() && mLayout.getItemPrefetchCount() > 0) {
+                mDx = dx;
+                mDy = dy;
+                removeCallbacks(this);
+                post(this);
+            }
+        }
+
+        void clearPrefetchPositions() {
+            if (mItemPrefetchArray != null) {
+                Arrays.fill(mItemPrefetchArray, NO_POSITION);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (mAdapter == null || mLayout == null || !mLayout.isItemPrefetchEnabled()
+                    || mDataSetHasChangedAfterLayout || mAdapterHelper.hasPendingUpdates()
+                    || mRunningLayoutOrScroll || mChildHelper.getChildCount() == 0) {
+                return;
+            }
+            final int prefetchCount = mLayout.getItemPrefetchCount();
+            if (prefetchCount < 1) {
+                return;
+            }
+            // getDrawingTime() is the start time of the last frame, in the uptime time base which
+            // System.nanoTime() also uses.
+            final long lastFrameStartNanos = TimeUnit.MILLISECONDS.toNanos(getDrawingTime());
+            if (lastFrameStartNanos == 0 || sFrameIntervalNanos == 0) {
+                return;
+            }
+            final long nowNanos = System.nanoTime();
+            final long deadlineNanos = lastFrameStartNanos + sFrameIntervalNanos;
+            if (nowNanos - lastFrameStartNanos > sFrameIntervalNanos
+                    || deadlineNanos - nowNanos < MIN_PREFETCH_TIME_NANOS) {
+                // the next frame is due; prefetching now would delay it.
+                return;
+            }
+            if (mItemPrefetchArray == null || mItemPrefetchArray.length < prefetchCount) {
+                mItemPrefetchArray = new int[prefetchCount];
+            }
+            clearPrefetchPositions();
+            mRecycler.updateViewCacheSize();
+            final int viewCount = mLayout.gatherPrefetchIndices(mDx, mDy, mState,
+                    mItemPrefetchArray);
+            mRecycler.prefetch(mItemPrefetchArray, Math.min(viewCount, prefetchCount),
+                    mState.getItemCount(), deadlineNanos);
+        }
+
+        /**
+         * Prefetches the items this RecyclerView will show in its first layout. Called while the
+         * item view of an outer RecyclerView, which contains this RecyclerView, is prefetched.
+         *
+         * @param deadlineNanos The {@link System#nanoTime()} after which no more views should be
+         *                      prefetched
+         */
+        void prefetchInitialItems(long deadlineNanos) {
+            if (mAdapter == null || mLayout == null || !mLayout.isItemPrefetchEnabled()
+                    || mDataSetHasChangedAfterLayout || mAdapterHelper.hasPendingUpdates()
+                    || mRunningLayoutOrScroll || mChildHelper.getChildCount() != 0) {
+                // already laid out or has to go through a full layout anyways
+                return;
+            }
+            final int prefetchCount = mLayout.getInitialPrefetchCount();
+            if (prefetchCount < 1) {
+                return;
+            }
+            if (mItemPrefetchArray == null || mItemPrefetchArray.length < prefetchCount) {
+                mItemPrefetchArray = new int[prefetchCount];
+            }
+            clearPrefetchPositions();
+            final int itemCount = mAdapter.getItemCount();
+            final int viewCount = Math.min(prefetchCount,
+                    mLayout.gatherInitialPrefetchIndices(itemCount, mItemPrefetchArray));
+            if (viewCount < 1) {
+                return;
+            }
+            if (viewCount > mRecycler.mNestedPrefetchCount) {
+                mRecycler.mNestedPrefetchCount = viewCount;
+                mRecycler.updateViewCacheSize();
+            }
+            // this RecyclerView has not been laid out since its adapter was set, so the item
+            // count in the state may be stale.
+            mRecycler.prefetch(mItemPrefetchArray, viewCount, itemCount, deadlineNanos);
+        }
+    }
+
     private void notifyOnScrolled(int hresult, int vresult) {
         // dummy values, View's implementation does not use these.
         onScrollChanged(0, 0, 0, 0);
@@ -3351,9 +3534,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         }
 
         @Override
-        public void onItemRangeChanged(int positionStart, int itemCount) {
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
             assertNotInLayoutOrScroll(null);
-            if (mAdapterHelper.onItemRangeChanged(positionStart, itemCount)) {
+            if (mAdapterHelper.onItemRangeChanged(positionStart, itemCount, payload)) {
                 triggerUpdateProcessor();
             }
         }
@@ -3399,33 +3582,186 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
      * and use {@link RecyclerView#setRecycledViewPool(RecycledViewPool)}.
      * <p>
      * RecyclerView automatically creates a pool for itself if you don't provide one.
-     *
+     * <p>
+     * The pool also keeps running averages of how long it takes to create and to bind a
+     * ViewHolder of each view type. RecyclerView uses them to decide whether prefetching an item
+     * fits in the time left before the next frame, and they can be read for instrumentation via
+     * {@link #getCreateRunningAverageNanos(int)} and {@link #getBindRunningAverageNanos(int)}.
+     * <p>
+     * When {@link #setAdaptiveSizingEnabled(boolean) adaptive sizing} is enabled, the maximum
+     * number of ViewHolders kept for a view type grows each time a RecyclerView has to create a
+     * new ViewHolder of that type while scrolling after the pool had to drop one, and shrinks
+     * back to the value set via {@link #setMaxRecycledViews(int, int)} in
+     * {@link #onTrimMemory(int)}.
      */
     public static class RecycledViewPool {
-        private SparseArray<ArrayList<ViewHolder>> mScrap =
-                new SparseArray<ArrayList<ViewHolder>>();
-        private SparseIntArray mMaxScrap = new SparseIntArray();
+        private static final int DEFAULT_MAX_SCRAP = 5;
+
+        /**
+         * The upper limit for the number of ViewHolders adaptive sizing keeps for a view type.
+         */
+        private static final int MAX_ADAPTIVE_SCRAP = 20;
+
+        // Values of android.content.ComponentCallbacks2, which is not available on all platforms
+        // this library supports.
+        private static final int TRIM_MEMORY_RUNNING_LOW = 10;
+        private static final int TRIM_MEMORY_UI_HIDDEN = 20;
+
+        private static final WeakHashMap<Context, RecycledViewPool> sSharedPools =
+                new WeakHashMap<Context, RecycledViewPool>();
+
+        /**
+         * Tracks the scrapped ViewHolders of a single view type, along with the running averages
+         * of their creation and bind times.
+         */
+        static class ScrapData {
+            final ArrayList<ViewHolder> mScrapHeap = new ArrayList<ViewHolder>();
+            int mMaxScrap = DEFAULT_MAX_SCRAP;
+            // the maximum set by the developer, which adaptive sizing does not shrink below
+            int mRequestedMaxScrap = DEFAULT_MAX_SCRAP;
+            // true if a ViewHolder was dropped because the heap was full
+            boolean mDroppedScrap = false;
+            long mCreateRunningAverageNs = 0;
+            long mBindRunningAverageNs = 0;
+        }
+
+        private SparseArray<ScrapData> mScrap = new SparseArray<ScrapData>();
         private int mAttachCount = 0;
+        private boolean mAdaptiveSizingEnabled = false;
+        private boolean mClearWhenUnused = false;
 
-        private static final int DEFAULT_MAX_SCRAP = 5;
+        /**
+         * Returns a pool which is shared by all RecyclerViews created with the given Context
+         * that choose to use it, e.g. the RecyclerViews of several
+         * {@link android.support.v4.view.ViewPager ViewPager} pages of an Activity.
+         * <p>
+         * The shared pool has adaptive sizing enabled. Since the ViewHolders it keeps reference
+         * the Context they were created with, only RecyclerViews created with {@code context}
+         * should use it, and it drops all of them once no RecyclerView that has an adapter and
+         * is attached to a window is using it anymore. A RecyclerView releases the pool when it
+         * is detached from its window, e.g. when its Activity is destroyed, when its adapter is
+         * set to null or when it switches to another pool. The pool is kept in a static map
+         * that references {@code context} weakly.
+         * <p>
+         * The view types of all adapters using the pool share one namespace: a ViewHolder
+         * recycled by one adapter is handed to any other adapter asking for the same view type.
+         * Adapters that do not create interchangeable ViewHolders must use view types unique
+         * among them, such as the layout resource ids of their item views.
+         * <p>
+         * Like all RecycledViewPools, shared pools must only be used on the main thread.
+         *
+         * @param context The Context the RecyclerViews using the pool were created with
+         * @return The RecycledViewPool shared by the RecyclerViews of {@code context}
+         */
+        public static RecycledViewPool getSharedPool(Context context) {
+            RecycledViewPool pool = sSharedPools.get(context);
+            if (pool == null) {
+                pool = new RecycledViewPool();
+                pool.mAdaptiveSizingEnabled = true;
+                pool.mClearWhenUnused = true;
+                sSharedPools.put(context, pool);
+            }
+            return pool;
+        }
+
+        /**
+         * Enables or disables adaptive sizing of this pool. Disabling it restores the maximum
+         * values set via {@link #setMaxRecycledViews(int, int)}.
+         *
+         * @param enabled True if the pool should grow view types which miss while scrolling
+         * @see #onTrimMemory(int)
+         */
+        public void setAdaptiveSizingEnabled(boolean enabled) {
+            if (mAdaptiveSizingEnabled == enabled) {
+                return;
+            }
+            mAdaptiveSizingEnabled = enabled;
+            if (!enabled) {
+                for (int i = 0; i < mScrap.size(); i++) {
+                    trimScrapData(mScrap.valueAt(i), mScrap.valueAt(i).mRequestedMaxScrap);
+                }
+            }
+        }
+
+        /**
+         * Returns whether adaptive sizing is enabled for this pool.
+         *
+         * @return True if adaptive sizing is enabled
+         * @see #setAdaptiveSizingEnabled(boolean)
+         */
+        public boolean isAdaptiveSizingEnabled() {
+            return mAdaptiveSizingEnabled;
+        }
+
+        /**
+         * Releases memory held by the pool. Call this from
+         * {@code ComponentCallbacks2#onTrimMemory(int)} with the level passed to it.
+         * <p>
+         * From {@code TRIM_MEMORY_RUNNING_LOW} on, half of the room adaptive sizing added to each
+         * view type is given back. From {@code TRIM_MEMORY_UI_HIDDEN} on, every view type is
+         * reset to the maximum set via {@link #setMaxRecycledViews(int, int)}. The ViewHolders
+         * which do not fit anymore are dropped.
+         *
+         * @param level The trim level reported by the system
+         */
+        public void onTrimMemory(int level) {
+            if (level < TRIM_MEMORY_RUNNING_LOW) {
+                return;
+            }
+            for (int i = 0; i < mScrap.size(); i++) {
+                final ScrapData scrapData = mScrap.valueAt(i);
+                final int requested = scrapData.mRequestedMaxScrap;
+                final int max = level >= TRIM_MEMORY_UI_HIDDEN ? requested
+                        : requested + (scrapData.mMaxScrap - requested) / 2;
+                trimScrapData(scrapData, max);
+            }
+        }
+
+        /**
+         * Called by the Recycler when it had to create a ViewHolder of the given type while
+         * scrolling because there was none in the pool.
+         */
+        void onRecycledViewMiss(int viewType) {
+            if (!mAdaptiveSizingEnabled) {
+                return;
+            }
+            final ScrapData scrapData = getScrapDataForType(viewType);
+            // only grow if we have been dropping ViewHolders of this type; otherwise all of them
+            // are in use and a larger pool would not have helped.
+            if (scrapData.mDroppedScrap && scrapData.mMaxScrap < MAX_ADAPTIVE_SCRAP) {
+                scrapData.mMaxScrap++;
+            }
+            scrapData.mDroppedScrap = false;
+        }
+
+        private void trimScrapData(ScrapData scrapData, int max) {
+            if (max < scrapData.mMaxScrap) {
+                scrapData.mMaxScrap = max;
+            }
+            final ArrayList<ViewHolder> scrapHeap = scrapData.mScrapHeap;
+            while (scrapHeap.size() > scrapData.mMaxScrap) {
+                scrapHeap.remove(scrapHeap.size() - 1);
+            }
+            scrapData.mDroppedScrap = false;
+        }
 
         public void clear() {
-            mScrap.clear();
+            for (int i = 0; i < mScrap.size(); i++) {
+                mScrap.valueAt(i).mScrapHeap.clear();
+            }
         }
 
         public void setMaxRecycledViews(int viewType, int max) {
-            mMaxScrap.put(viewType, max);
-            final ArrayList<ViewHolder> scrapHeap = mScrap.get(viewType);
-            if (scrapHeap != null) {
-                while (scrapHeap.size() > max) {
-                    scrapHeap.remove(scrapHeap.size() - 1);
-                }
-            }
+            final ScrapData scrapData = getScrapDataForType(viewType);
+            scrapData.mRequestedMaxScrap = max;
+            scrapData.mMaxScrap = max;
+            trimScrapData(scrapData, max);
         }
 
         public ViewHolder getRecycledView(int viewType) {
-            final ArrayList<ViewHolder> scrapHeap = mScrap.get(viewType);
-            if (scrapHeap != null && !scrapHeap.isEmpty()) {
+            final ScrapData scrapData = mScrap.get(viewType);
+            if (scrapData != null && !scrapData.mScrapHeap.isEmpty()) {
+                final ArrayList<ViewHolder> scrapHeap = scrapData.mScrapHeap;
                 final int index = scrapHeap.size() - 1;
                 final ViewHolder scrap = scrapHeap.get(index);
                 scrapHeap.remove(index);
@@ -3437,22 +3773,98 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         int size() {
             int count = 0;
             for (int i = 0; i < mScrap.size(); i ++) {
-                ArrayList<ViewHolder> viewHolders = mScrap.valueAt(i);
-                if (viewHolders != null) {
-                    count += viewHolders.size();
-                }
+                count += mScrap.valueAt(i).mScrapHeap.size();
             }
             return count;
         }
 
         public void putRecycledView(ViewHolder scrap) {
+            if (mClearWhenUnused && mAttachCount == 0) {
+                // nobody would release it, see getSharedPool(Context)
+                return;
+            }
             final int viewType = scrap.getItemViewType();
-            final ArrayList scrapHeap = getScrapHeapForType(viewType);
-            if (mMaxScrap.get(viewType) <= scrapHeap.size()) {
+            final ScrapData scrapData = getScrapDataForType(viewType);
+            if (scrapData.mMaxScrap <= scrapData.mScrapHeap.size()) {
+                scrapData.mDroppedScrap = true;
                 return;
             }
             scrap.resetInternal();
-            scrapHeap.add(scrap);
+            scrapData.mScrapHeap.add(scrap);
+        }
+
+        /**
+         * Returns whether there is a recycled ViewHolder of the given type in the pool.
+         */
+        boolean hasRecycledView(int viewType) {
+            final ScrapData scrapData = mScrap.get(viewType);
+            return scrapData != null && !scrapData.mScrapHeap.isEmpty();
+        }
+
+        private static long runningAverage(long oldAverage, long newValue) {
+            if (oldAverage == 0) {
+                return newValue;
+            }
+            // weigh recent samples more so that the average follows changes in the content
+            return (oldAverage / 4 * 3) + (newValue / 4);
+        }
+
+        void factorInCreateTime(int viewType, long createTimeNs) {
+            final ScrapData scrapData = getScrapDataForType(viewType);
+            scrapData.mCreateRunningAverageNs = runningAverage(
+                    scrapData.mCreateRunningAverageNs, createTimeNs);
+        }
+
+        void factorInBindTime(int viewType, long bindTimeNs) {
+            final ScrapData scrapData = getScrapDataForType(viewType);
+            scrapData.mBindRunningAverageNs = runningAverage(
+                    scrapData.mBindRunningAverageNs, bindTimeNs);
+        }
+
+        /**
+         * Returns whether creating a ViewHolder of the given type, started at approxCurrentNs, is
+         * expected to finish before deadlineNs. A type which has never been created is assumed
+         * to fit.
+         */
+        boolean willCreateInTime(int viewType, long approxCurrentNs, long deadlineNs) {
+            final long expectedDurationNs = getCreateRunningAverageNanos(viewType);
+            return expectedDurationNs == 0 || (approxCurrentNs + expectedDurationNs < deadlineNs);
+        }
+
+        /**
+         * Returns whether binding a ViewHolder of the given type, started at approxCurrentNs, is
+         * expected to finish before deadlineNs. A type which has never been bound is assumed to
+         * fit.
+         */
+        boolean willBindInTime(int viewType, long approxCurrentNs, long deadlineNs) {
+            final long expectedDurationNs = getBindRunningAverageNanos(viewType);
+            return expectedDurationNs == 0 || (approxCurrentNs + expectedDurationNs < deadlineNs);
+        }
+
+        /**
+         * Returns the running average of the time it takes to create a ViewHolder of the given
+         * type, measured around {@link Adapter#createViewHolder(ViewGroup, int)}.
+         *
+         * @param viewType The view type
+         * @return The average creation time in nanoseconds, or 0 if no ViewHolder of this type
+         * has been created through a RecyclerView using this pool.
+         */
+        public long getCreateRunningAverageNanos(int viewType) {
+            final ScrapData scrapData = mScrap.get(viewType);
+            return scrapData == null ? 0 : scrapData.mCreateRunningAverageNs;
+        }
+
+        /**
+         * Returns the running average of the time it takes to bind a ViewHolder of the given
+         * type, measured around {@link Adapter#bindViewHolder(ViewHolder, int)}.
+         *
+         * @param viewType The view type
+         * @return The average bind time in nanoseconds, or 0 if no ViewHolder of this type has
+         * been bound through a RecyclerView using this pool.
+         */
+        public long getBindRunningAverageNanos(int viewType) {
+            final ScrapData scrapData = mScrap.get(viewType);
+            return scrapData == null ? 0 : scrapData.mBindRunningAverageNs;
         }
 
         void attach(Adapter adapter) {
@@ -3461,6 +3873,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
 
         void detach() {
             mAttachCount--;
+            if (mClearWhenUnused && mAttachCount == 0) {
+                clear();
+            }
         }
 
 
@@ -3488,16 +3903,13 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             }
         }
 
-        private ArrayList<ViewHolder> getScrapHeapForType(int viewType) {
-            ArrayList<ViewHolder> scrap = mScrap.get(viewType);
-            if (scrap == null) {
-                scrap = new ArrayList<ViewHolder>();
-                mScrap.put(viewType, scrap);
-                if (mMaxScrap.indexOfKey(viewType) < 0) {
-                    mMaxScrap.put(viewType, DEFAULT_MAX_SCRAP);
-                }
+        private ScrapData getScrapDataForType(int viewType) {
+            ScrapData scrapData = mScrap.get(viewType);
+            if (scrapData == null) {
+                scrapData = new ScrapData();
+                mScrap.put(viewType, scrapData);
             }
-            return scrap;
+            return scrapData;
         }
     }
 
@@ -3523,9 +3935,18 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         private final List<ViewHolder>
                 mUnmodifiableAttachedScrap = Collections.unmodifiableList(mAttachedScrap);
 
+        private int mRequestedCacheMax = DEFAULT_CACHE_SIZE;
         private int mViewCacheMax = DEFAULT_CACHE_SIZE;
 
+        /**
+         * The largest number of views prefetched into this Recycler while its RecyclerView was
+         * nested in another one. Keeps room in the cache for them until they are laid out.
+         */
+        int mNestedPrefetchCount = 0;
+
         private RecycledViewPool mRecyclerPool;
+        // whether this Recycler is counted by mRecyclerPool, see updatePoolAttachment()
+        private boolean mPoolAttached;
 
         private ViewCacheExtension mViewCacheExtension;
 
@@ -3546,13 +3967,114 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
          * @param viewCount Number of views to keep before sending views to the shared pool
          */
         public void setViewCacheSize(int viewCount) {
-            mViewCacheMax = viewCount;
+            mRequestedCacheMax = viewCount;
+            updateViewCacheSize();
+        }
+
+        /**
+         * Recalculates the cache size from the size requested by the developer plus the number of
+         * views the LayoutManager prefetches, so that prefetched views do not push out the views
+         * which were cached while scrolling.
+         */
+        void updateViewCacheSize() {
+            final int extraCache = mViewPrefetcher != null && mLayout != null
+                    && mLayout.isItemPrefetchEnabled()
+                    ? Math.max(mLayout.getItemPrefetchCount(), mNestedPrefetchCount) : 0;
+            mViewCacheMax = mRequestedCacheMax + extraCache;
             // first, try the views that can be recycled
-            for (int i = mCachedViews.size() - 1; i >= 0 && mCachedViews.size() > viewCount; i--) {
+            for (int i = mCachedViews.size() - 1;
+                    i >= 0 && mCachedViews.size() > mViewCacheMax; i--) {
                 recycleCachedViewAt(i);
             }
         }
 
+        /**
+         * Creates and binds the views for the given adapter positions and puts them into the view
+         * cache, stopping early if the given deadline passes.
+         * <p>
+         * Positions which are already attached or cached are skipped.
+         *
+         * @param itemPrefetchArray The adapter positions to prefetch, closest first
+         * @param viewCount The number of valid positions in the array
+         * @param itemCount The number of items in the adapter, which the {@link State} of a
+         *                  RecyclerView that has not been laid out yet does not know
+         * @param deadlineNanos The {@link System#nanoTime()} after which no more views should be
+         *                      prefetched
+         */
+        void prefetch(int[] itemPrefetchArray, int viewCount, int itemCount, long deadlineNanos) {
+            for (int i = 0; i < viewCount; i++) {
+                if (System.nanoTime() >= deadlineNanos) {
+                    return;
+                }
+                final int position = itemPrefetchArray[i];
+                if (position < 0 || position >= itemCount) {
+                    continue;
+                }
+                if (isPrefetchPositionAttached(position) || isPositionCached(position)) {
+                    continue;
+                }
+                final int type = mAdapter.getItemViewType(
+                        mAdapterHelper.findPositionOffset(position));
+                final RecycledViewPool pool = getRecycledViewPool();
+                final long now = System.nanoTime();
+                if ((!pool.hasRecycledView(type) && !pool.willCreateInTime(type, now,
+                        deadlineNanos)) || !pool.willBindInTime(type, now, deadlineNanos)) {
+                    // this item is not expected to be ready before the next frame
+                    return;
+                }
+                final View prefetchView = getViewForPosition(position, false, itemCount);
+                final RecyclerView nested = findNestedRecyclerView(prefetchView);
+                if (nested != null && nested.mViewPrefetcher != null) {
+                    nested.mViewPrefetcher.prefetchInitialItems(deadlineNanos);
+                }
+                recycleView(prefetchView);
+            }
+        }
+
+        /**
+         * Returns the first RecyclerView found in the given item view's hierarchy, or null if it
+         * does not contain one.
+         */
+        private RecyclerView findNestedRecyclerView(View view) {
+            if (view instanceof RecyclerView) {
+                return (RecyclerView) view;
+            }
+            if (view instanceof ViewGroup) {
+                final ViewGroup parent = (ViewGroup) view;
+                final int count = parent.getChildCount();
+                for (int i = 0; i < count; i++) {
+                    final RecyclerView nested = findNestedRecyclerView(parent.getChildAt(i));
+                    if (nested != null) {
+                        return nested;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private boolean isPrefetchPositionAttached(int position) {
+            final int childCount = mChildHelper.getUnfilteredChildCount();
+            for (int i = 0; i < childCount; i++) {
+                final ViewHolder holder = getChildViewHolderInt(
+                        mChildHelper.getUnfilteredChildAt(i));
+                if (holder != null && !holder.isInvalid() && holder.mPosition == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isPositionCached(int position) {
+            final int cacheSize = mCachedViews.size();
+            for (int i = 0; i < cacheSize; i++) {
+                final ViewHolder holder = mCachedViews.get(i);
+                if (!holder.isInvalid() && holder.getLayoutPosition() == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         /**
          * Returns an unmodifiable list of ViewHolders that are currently in the scrap list.
          *
@@ -3622,7 +4144,10 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                         + "state:" + mState.getItemCount());
             }
             holder.mOwnerRecyclerView = RecyclerView.this;
+            final long start = System.nanoTime();
             mAdapter.bindViewHolder(holder, offsetPosition);
+            getRecycledViewPool().factorInBindTime(holder.getItemViewType(),
+                    System.nanoTime() - start);
             attachAccessibilityDelegate(view);
             if (mState.isPreLayout()) {
                 holder.mPreLayoutPosition = position;
@@ -3693,9 +4218,17 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         }
 
         View getViewForPosition(int position, boolean dryRun) {
-            if (position < 0 || position >= mState.getItemCount()) {
+            return getViewForPosition(position, dryRun, mState.getItemCount());
+        }
+
+        /**
+         * @param itemCount The item count to check {@code position} against, which is the one in
+         *                  the {@link State} unless views are prefetched before the first layout
+         */
+        View getViewForPosition(int position, boolean dryRun, int itemCount) {
+            if (position < 0 || position >= itemCount) {
                 throw new IndexOutOfBoundsException("Invalid item position " + position
-                        + "(" + position + "). Item count:" + mState.getItemCount());
+                        + "(" + position + "). Item count:" + itemCount);
             }
             boolean fromScrap = false;
             ViewHolder holder = null;
@@ -3771,6 +4304,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                                 + "pool");
                     }
                     holder = getRecycledViewPool().getRecycledView(type);
+                    if (holder == null && mScrollState != SCROLL_STATE_IDLE) {
+                        getRecycledViewPool().onRecycledViewMiss(type);
+                    }
                     if (holder != null) {
                         holder.resetInternal();
                         if (FORCE_INVALIDATE_DISPLAY_LIST) {
@@ -3779,7 +4315,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                     }
                 }
                 if (holder == null) {
+                    final long start = System.nanoTime();
                     holder = mAdapter.createViewHolder(RecyclerView.this, type);
+                    getRecycledViewPool().factorInCreateTime(type, System.nanoTime() - start);
                     if (DEBUG) {
                         Log.d(TAG, "getViewForPosition created new ViewHolder");
                     }
@@ -3796,7 +4334,10 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                 }
                 final int offsetPosition = mAdapterHelper.findPositionOffset(position);
                 holder.mOwnerRecyclerView = RecyclerView.this;
+                final long start = System.nanoTime();
                 mAdapter.bindViewHolder(holder, offsetPosition);
+                getRecycledViewPool().factorInBindTime(holder.getItemViewType(),
+                        System.nanoTime() - start);
                 attachAccessibilityDelegate(holder.itemView);
                 bound = true;
                 if (mState.isPreLayout()) {
@@ -4212,7 +4753,11 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         void onAdapterChanged(Adapter oldAdapter, Adapter newAdapter,
                 boolean compatibleWithPrevious) {
             clear();
-            getRecycledViewPool().onAdapterChanged(oldAdapter, newAdapter, compatibleWithPrevious);
+            final RecycledViewPool pool = getRecycledViewPool();
+            final boolean wasAttached = mPoolAttached;
+            mPoolAttached = shouldAttachPool(pool);
+            pool.onAdapterChanged(wasAttached ? oldAdapter : null,
+                    mPoolAttached ? newAdapter : null, compatibleWithPrevious);
         }
 
         void offsetPositionRecordsForMove(int from, int to) {
@@ -4291,12 +4836,36 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         }
 
         void setRecycledViewPool(RecycledViewPool pool) {
-            if (mRecyclerPool != null) {
+            if (mRecyclerPool != null && mPoolAttached) {
                 mRecyclerPool.detach();
             }
             mRecyclerPool = pool;
+            mPoolAttached = false;
             if (pool != null) {
-                mRecyclerPool.attach(getAdapter());
+                updatePoolAttachment();
+            }
+        }
+
+        /**
+         * Pools only count RecyclerViews with an adapter, see RecycledViewPool#onAdapterChanged.
+         * Pools that clear when unused also only count RecyclerViews attached to a window, so
+         * that they do not keep the ViewHolders of a destroyed Activity.
+         */
+        private boolean shouldAttachPool(RecycledViewPool pool) {
+            return mAdapter != null && (mIsAttached || !pool.mClearWhenUnused);
+        }
+
+        void updatePoolAttachment() {
+            final RecycledViewPool pool = getRecycledViewPool();
+            final boolean attach = shouldAttachPool(pool);
+            if (attach == mPoolAttached) {
+                return;
+            }
+            mPoolAttached = attach;
+            if (attach) {
+                pool.attach(mAdapter);
+            } else {
+                pool.detach();
             }
         }
 
@@ -4342,6 +4911,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                     final ViewHolder holder = mCachedViews.get(i);
                     if (holder != null) {
                         holder.addFlags(ViewHolder.FLAG_UPDATE | ViewHolder.FLAG_INVALID);
+                        holder.addChangePayload(null);
                     }
                 }
             } else {
@@ -4466,6 +5036,32 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
          */
         public abstract void onBindViewHolder(VH holder, int position);
 
+        /**
+         * Called by RecyclerView to display the data at the specified position. This method
+         * should update the contents of the {@link ViewHolder#itemView} to reflect the item at
+         * the given position.
+         * <p>
+         * The payloads parameter is a merge list from {@link #notifyItemChanged(int, Object)} or
+         * {@link #notifyItemRangeChanged(int, int, Object)}. If the payloads list is not empty,
+         * the ViewHolder is currently bound to old data and Adapter may run an efficient partial
+         * update using the payload info. If the payload is empty, Adapter must run a full bind.
+         * Adapter should not assume that the payload passed in notify methods will be received by
+         * onBindViewHolder(). For example when the view is not attached to the screen, the
+         * payload in notifyItemChange() will be simply dropped.
+         * <p>
+         * The default implementation ignores the payloads and calls
+         * {@link #onBindViewHolder(ViewHolder, int)}.
+         *
+         * @param holder The ViewHolder which should be updated to represent the contents of the
+         *               item at the given position in the data set.
+         * @param position The position of the item within the adapter's data set.
+         * @param payloads A non-null list of merged payloads. Can be empty list if requires full
+         *                 update.
+         */
+        public void onBindViewHolder(VH holder, int position, List<Object> payloads) {
+            onBindViewHolder(holder, position);
+        }
+
         /**
          * This method calls {@link #onCreateViewHolder(ViewGroup, int)} to create a new
          * {@link ViewHolder} and initializes some private fields to be used by RecyclerView.
@@ -4479,11 +5075,11 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         }
 
         /**
-         * This method internally calls {@link #onBindViewHolder(ViewHolder, int)} to update the
-         * {@link ViewHolder} contents with the item at the given position and also sets up some
-         * private fields to be used by RecyclerView.
+         * This method internally calls {@link #onBindViewHolder(ViewHolder, int, List)} to update
+         * the {@link ViewHolder} contents with the item at the given position and also sets up
+         * some private fields to be used by RecyclerView.
          *
-         * @see #onBindViewHolder(ViewHolder, int)
+         * @see #onBindViewHolder(ViewHolder, int, List)
          */
         public final void bindViewHolder(VH holder, int position) {
             holder.mPosition = position;
@@ -4493,7 +5089,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             holder.setFlags(ViewHolder.FLAG_BOUND,
                     ViewHolder.FLAG_BOUND | ViewHolder.FLAG_UPDATE | ViewHolder.FLAG_INVALID
                             | ViewHolder.FLAG_ADAPTER_POSITION_UNKNOWN);
-            onBindViewHolder(holder, position);
+            onBindViewHolder(holder, position, holder.getUnmodifiedPayloads());
+            holder.clearPayload();
         }
 
         /**
@@ -4752,6 +5349,34 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mObservable.notifyItemRangeChanged(position, 1);
         }
 
+        /**
+         * Notify any registered observers that the item at <code>position</code> has changed with
+         * an optional payload object.
+         *
+         * <p>This is an item change event, not a structural change event. It indicates that any
+         * reflection of the data at <code>position</code> is out of date and should be updated.
+         * The item at <code>position</code> retains the same identity.
+         * </p>
+         *
+         * <p>
+         * Client can optionally pass a payload for partial change. These payloads will be merged
+         * and may be passed to adapter's {@link #onBindViewHolder(ViewHolder, int, List)} if the
+         * item is already represented by a ViewHolder and it will be rebound to the same
+         * ViewHolder. A notifyItemRangeChanged() with null payload will clear all existing
+         * payloads on that item and prevent future payload until
+         * {@link #onBindViewHolder(ViewHolder, int, List)} is called. Adapter should not assume
+         * that the payload will always be passed to onBindViewHolder(), e.g. when the view is not
+         * attached, the payload will be simply dropped.
+         *
+         * @param position Position of the item that has changed
+         * @param payload Optional parameter, use null to identify a "full" update
+         *
+         * @see #notifyItemRangeChanged(int, int)
+         */
+        public final void notifyItemChanged(int position, Object payload) {
+            mObservable.notifyItemRangeChanged(position, 1, payload);
+        }
+
         /**
          * Notify any registered observers that the <code>itemCount</code> items starting at
          * position <code>positionStart</code> have changed.
@@ -4769,6 +5394,37 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mObservable.notifyItemRangeChanged(positionStart, itemCount);
         }
 
+        /**
+         * Notify any registered observers that the <code>itemCount</code> items starting at
+         * position <code>positionStart</code> have changed. An optional payload can be
+         * passed to each changed item.
+         *
+         * <p>This is an item change event, not a structural change event. It indicates that any
+         * reflection of the data in the given position range is out of date and should be updated.
+         * The items in the given range retain the same identity.
+         * </p>
+         *
+         * <p>
+         * Client can optionally pass a payload for partial change. These payloads will be merged
+         * and may be passed to adapter's {@link #onBindViewHolder(ViewHolder, int, List)} if the
+         * item is already represented by a ViewHolder and it will be rebound to the same
+         * ViewHolder. A notifyItemRangeChanged() with null payload will clear all existing
+         * payloads on that item and prevent future payload until
+         * {@link #onBindViewHolder(ViewHolder, int, List)} is called. Adapter should not assume
+         * that the payload will always be passed to onBindViewHolder(), e.g. when the view is not
+         * attached, the payload will be simply dropped.
+         *
+         * @param positionStart Position of the first item that has changed
+         * @param itemCount Number of items that have changed
+         * @param payload  Optional parameter, use null to identify a "full" update
+         *
+         * @see #notifyItemChanged(int)
+         */
+        public final void notifyItemRangeChanged(int positionStart, int itemCount,
+                Object payload) {
+            mObservable.notifyItemRangeChanged(positionStart, itemCount, payload);
+        }
+
         /**
          * Notify any registered observers that the item reflected at <code>position</code>
          * has been newly inserted. The item previously at <code>position</code> is now at
@@ -4886,6 +5542,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
 
         private boolean mRequestedSimpleAnimations = false;
 
+        private boolean mItemPrefetchEnabled = true;
+
         void setRecyclerView(RecyclerView recyclerView) {
             if (recyclerView == null) {
                 mRecyclerView = null;
@@ -4897,6 +5555,101 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
 
         }
 
+        /**
+         * Sets whether the RecyclerView should create and bind the views this LayoutManager is
+         * about to lay out while the UI thread is idle between scroll frames.
+         * <p>
+         * Prefetching is enabled by default. It has no effect unless the LayoutManager reports a
+         * positive {@link #getItemPrefetchCount()}.
+         *
+         * @param enabled True if items should be prefetched in between scroll frames.
+         * @see #isItemPrefetchEnabled()
+         * @see #gatherPrefetchIndices(int, int, State, int[])
+         */
+        public final void setItemPrefetchEnabled(boolean enabled) {
+            if (enabled != mItemPrefetchEnabled) {
+                mItemPrefetchEnabled = enabled;
+                if (mRecyclerView != null) {
+                    mRecyclerView.mRecycler.updateViewCacheSize();
+                }
+            }
+        }
+
+        /**
+         * Returns whether this LayoutManager allows its items to be prefetched.
+         *
+         * @return True if items may be prefetched in between scroll frames.
+         * @see #setItemPrefetchEnabled(boolean)
+         */
+        public final boolean isItemPrefetchEnabled() {
+            return mItemPrefetchEnabled;
+        }
+
+        /**
+         * Returns the maximum number of items this LayoutManager may return from
+         * {@link #gatherPrefetchIndices(int, int, State, int[])}.
+         * <p>
+         * The Recycler's view cache is enlarged by this number so that prefetched views do not
+         * evict other cached views. The default implementation returns 0, which disables
+         * prefetching.
+         *
+         * @return The maximum number of items to prefetch after a scroll frame.
+         */
+        public int getItemPrefetchCount() {
+            return 0;
+        }
+
+        /**
+         * Gathers the adapter positions of the items which will be laid out next if the
+         * RecyclerView keeps scrolling by the given deltas.
+         * <p>
+         * This method is called on the UI thread after a scroll frame, outside of layout. The
+         * positions should be ordered from the one that will become visible first. The
+         * RecyclerView creates and binds these items ahead of time if there is enough time left
+         * before the next frame.
+         *
+         * @param dx The horizontal scroll delta of the last frame
+         * @param dy The vertical scroll delta of the last frame
+         * @param state Transient state of RecyclerView
+         * @param outIndices Array to be filled with the adapter positions to prefetch. Its size is
+         *                   at least {@link #getItemPrefetchCount()}.
+         * @return The number of positions written into outIndices.
+         */
+        public int gatherPrefetchIndices(int dx, int dy, State state, int[] outIndices) {
+            return 0;
+        }
+
+        /**
+         * Returns the maximum number of items this LayoutManager may return from
+         * {@link #gatherInitialPrefetchIndices(int, int[])}.
+         * <p>
+         * The default implementation returns 0, which disables nested prefetching.
+         *
+         * @return The maximum number of items to prefetch before the first layout.
+         */
+        public int getInitialPrefetchCount() {
+            return 0;
+        }
+
+        /**
+         * Gathers the adapter positions of the items which the first layout of this
+         * LayoutManager will show.
+         * <p>
+         * This method is called when the RecyclerView is nested inside another RecyclerView
+         * (e.g. a horizontal row in a vertical list) whose item is being prefetched, before this
+         * RecyclerView is attached or laid out. Views for the returned positions are created and
+         * bound ahead of time so that the nested RecyclerView arrives populated when it scrolls
+         * into view.
+         *
+         * @param adapterItemCount The number of items in the associated adapter
+         * @param outIndices Array to be filled with the adapter positions to prefetch. Its size is
+         *                   at least {@link #getInitialPrefetchCount()}.
+         * @return The number of positions written into outIndices.
+         */
+        public int gatherInitialPrefetchIndices(int adapterItemCount, int[] outIndices) {
+            return 0;
+        }
+
         /**
          * Calls {@code RecyclerView#requestLayout} on the underlying RecyclerView
          */
@@ -6402,6 +7155,20 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         public void onItemsUpdated(RecyclerView recyclerView, int positionStart, int itemCount) {
         }
 
+        /**
+         * Called when items have been changed in the adapter and with optional payload.
+         * Default implementation calls {@link #onItemsUpdated(RecyclerView, int, int)}.
+         *
+         * @param recyclerView
+         * @param positionStart
+         * @param itemCount
+         * @param payload
+         */
+        public void onItemsUpdated(RecyclerView recyclerView, int positionStart, int itemCount,
+                Object payload) {
+            onItemsUpdated(recyclerView, positionStart, itemCount);
+        }
+
         /**
          * Called when an item is moved withing the adapter.
          * <p>
@@ -7170,8 +7937,19 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
          */
         static final int FLAG_ADAPTER_POSITION_UNKNOWN = 1 << 9;
 
+        /**
+         * Set when a addChangePayload(null) is called
+         */
+        static final int FLAG_ADAPTER_FULLUPDATE = 1 << 10;
+
         private int mFlags;
 
+        private static final List<Object> FULLUPDATE_PAYLOADS = Collections.EMPTY_LIST;
+
+        List<Object> mPayloads = null;
+
+        List<Object> mUnmodifiedPayloads = null;
+
         private int mIsRecyclableCount = 0;
 
         // If non-null, view is currently considered scrap and may be reused for other data by the
@@ -7396,6 +8174,43 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mFlags |= flags;
         }
 
+        void addChangePayload(Object payload) {
+            if (payload == null) {
+                addFlags(FLAG_ADAPTER_FULLUPDATE);
+            } else if ((mFlags & FLAG_ADAPTER_FULLUPDATE) == 0) {
+                createPayloadsIfNeeded();
+                mPayloads.add(payload);
+            }
+        }
+
+        private void createPayloadsIfNeeded() {
+            if (mPayloads == null) {
+                mPayloads = new ArrayList<Object>();
+                mUnmodifiedPayloads = Collections.unmodifiableList(mPayloads);
+            }
+        }
+
+        void clearPayload() {
+            if (mPayloads != null) {
+                mPayloads.clear();
+            }
+            mFlags = mFlags & ~FLAG_ADAPTER_FULLUPDATE;
+        }
+
+        List<Object> getUnmodifiedPayloads() {
+            if ((mFlags & FLAG_ADAPTER_FULLUPDATE) == 0) {
+                if (mPayloads == null || mPayloads.size() == 0) {
+                    // Initial state,  no update being called.
+                    return FULLUPDATE_PAYLOADS;
+                }
+                // there are none-null payloads
+                return mUnmodifiedPayloads;
+            } else {
+                // a full update has been called.
+                return FULLUPDATE_PAYLOADS;
+            }
+        }
+
         void resetInternal() {
             mFlags = 0;
             mPosition = NO_POSITION;
@@ -7405,6 +8220,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mIsRecyclableCount = 0;
             mShadowedHolder = null;
             mShadowingHolder = null;
+            clearPayload();
         }
 
         @Override
@@ -7615,6 +8431,12 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             // do nothing
         }
 
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            // fallback to onItemRangeChanged(positionStart, itemCount) if app
+            // does not override this method.
+            onItemRangeChanged(positionStart, itemCount);
+        }
+
         public void onItemRangeInserted(int positionStart, int itemCount) {
             // do nothing
         }
@@ -8010,12 +8832,16 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         }
 
         public void notifyItemRangeChanged(int positionStart, int itemCount) {
+            notifyItemRangeChanged(positionStart, itemCount, null);
+        }
+
+        public void notifyItemRangeChanged(int positionStart, int itemCount, Object payload) {
             // since onItemRangeChanged() is implemented by the app, it could do anything, including
             // removing itself from {@link mObservers} - and that could cause problems if
             // an iterator is used on the ArrayList {@link mObservers}.
             // to avoid such problems, just march thru the list in the reverse order.
             for (int i = mObservers.size() - 1; i >= 0; i--) {
-                mObservers.get(i).onItemRangeChanged(positionStart, itemCount);
+                mObservers.get(i).onItemRangeChanged(positionStart, itemCount, payload);
             }
         }
 
@@ -8106,7 +8932,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         ArrayMap<ViewHolder, ItemHolderInfo> mPostLayoutHolderMap =
                 new ArrayMap<ViewHolder, ItemHolderInfo>();
         // nullable
-        ArrayMap<Long, ViewHolder> mOldChangedHolders = new ArrayMap<Long, ViewHolder>();
+        LongObjectMap<ViewHolder> mOldChangedHolders = new LongObjectMap<ViewHolder>();
 
         private SparseArray<Object> mData;
 
@@ -8283,12 +9109,10 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             onViewRecycled(holder);
         }
 
-        private void removeFrom(ArrayMap<Long, ViewHolder> holderMap, ViewHolder holder) {
-            for (int i = holderMap.size() - 1; i >= 0; i --) {
-                if (holder == holderMap.valueAt(i)) {
-                    holderMap.removeAt(i);
-                    return;
-                }
+        private void removeFrom(LongObjectMap<ViewHolder> holderMap, ViewHolder holder) {
+            final int index = holderMap.indexOfValue(holder);
+            if (index >= 0) {
+                holderMap.removeAt(index);
             }
         }
 
@@ -770,6 +770,39 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
         }
     }
 
+    /**
+     * StaggeredGridLayoutManager prefetches up to one item per span in the scroll direction.
+     */
+    @Override
+    public int getItemPrefetchCount() {
+        return mSpanCount;
+    }
+
+    @Override
+    public int gatherPrefetchIndices(int dx, int dy, RecyclerView.State state, int[] outIndices) {
+        final int delta = mOrientation == HORIZONTAL ? dx : dy;
+        if (getChildCount() == 0 || delta == 0) {
+            return 0;
+        }
+        final int referenceChildPosition;
+        final int itemDirection;
+        if (delta > 0) { // layout towards end
+            itemDirection = mShouldReverseLayout ? ITEM_DIRECTION_HEAD : ITEM_DIRECTION_TAIL;
+            referenceChildPosition = getLastChildPosition();
+        } else {
+            itemDirection = mShouldReverseLayout ? ITEM_DIRECTION_TAIL : ITEM_DIRECTION_HEAD;
+            referenceChildPosition = getFirstChildPosition();
+        }
+        final int itemCount = state.getItemCount();
+        int position = referenceChildPosition + itemDirection;
+        int count = 0;
+        while (count < mSpanCount && position >= 0 && position < itemCount) {
+            outIndices[count++] = position;
+            position += itemDirection;
+        }
+        return count;
+    }
+
     @Override
     public boolean supportsPredictiveItemAnimations() {
         return mPendingSavedState == null;
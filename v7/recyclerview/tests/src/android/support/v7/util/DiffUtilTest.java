@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class DiffUtilTest extends TestCase {
+
+    private static final Random sRand = new Random(System.nanoTime());
+
+    private List<Item> mBefore = new ArrayList<Item>();
+    private List<Item> mAfter = new ArrayList<Item>();
+
+    private static int sId = 0;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mBefore.clear();
+        mAfter.clear();
+    }
+
+    public void testNoChange() {
+        initWithSize(5);
+        check();
+    }
+
+    public void testAddItems() {
+        initWithSize(2);
+        add(1);
+        check();
+    }
+
+    public void testRemoveItems() {
+        initWithSize(10);
+        remove(3);
+        check();
+    }
+
+    public void testRemoveOneAddAnother() {
+        initWithSize(2);
+        remove(1);
+        add(1);
+        check();
+    }
+
+    public void testRemoveFromEmpty() {
+        initWithSize(5);
+        remove(0);
+        remove(0);
+        remove(0);
+        remove(0);
+        remove(0);
+        check();
+    }
+
+    public void testAddToEmpty() {
+        add(0);
+        add(0);
+        add(0);
+        check();
+    }
+
+    public void testChange() {
+        initWithSize(3);
+        mAfter.get(1).newItem = true;
+        check();
+    }
+
+    public void testChangePayload() {
+        initWithSize(4);
+        mAfter.get(2).newItem = true;
+        final List<Object> payloads = new ArrayList<Object>();
+        final Object payload = new Object();
+        DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return mBefore.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return mAfter.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemIndex, int newItemIndex) {
+                return mBefore.get(oldItemIndex).id == mAfter.get(newItemIndex).id;
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemIndex, int newItemIndex) {
+                return mBefore.get(oldItemIndex).newItem == mAfter.get(newItemIndex).newItem;
+            }
+
+            @Override
+            public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+                return payload;
+            }
+        }).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                fail("unexpected insert");
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                fail("unexpected removal");
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                fail("unexpected move");
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                assertEquals(2, position);
+                assertEquals(1, count);
+                payloads.add(payload);
+            }
+        });
+        assertEquals(1, payloads.size());
+        assertSame(payload, payloads.get(0));
+    }
+
+    public void testMove() {
+        initWithSize(4);
+        move(0, 3);
+        check();
+    }
+
+    public void testMoveAndChange() {
+        initWithSize(5);
+        move(4, 0);
+        mAfter.get(0).newItem = true;
+        check();
+    }
+
+    public void testSwap() {
+        initWithSize(2);
+        move(1, 0);
+        check();
+    }
+
+    public void testManyRandomChanges() {
+        for (int i = 0; i < 500; i++) {
+            initWithSize(sRand.nextInt(30));
+            final int ops = sRand.nextInt(15);
+            for (int op = 0; op < ops; op++) {
+                randomOp();
+            }
+            check();
+        }
+    }
+
+    public void testManyRandomChangesWithoutMoveDetection() {
+        for (int i = 0; i < 500; i++) {
+            initWithSize(sRand.nextInt(30));
+            final int ops = sRand.nextInt(15);
+            for (int op = 0; op < ops; op++) {
+                randomOp();
+            }
+            check(false);
+        }
+    }
+
+    private void randomOp() {
+        final int size = mAfter.size();
+        switch (size == 0 ? 0 : sRand.nextInt(4)) {
+            case 0:
+                add(sRand.nextInt(size + 1));
+                break;
+            case 1:
+                remove(sRand.nextInt(size));
+                break;
+            case 2:
+                move(sRand.nextInt(size), sRand.nextInt(size));
+                break;
+            case 3:
+                mAfter.get(sRand.nextInt(size)).newItem = true;
+                break;
+        }
+    }
+
+    private void initWithSize(int size) {
+        mBefore.clear();
+        mAfter.clear();
+        for (int i = 0; i < size; i++) {
+            mBefore.add(new Item(false));
+        }
+        for (Item item : mBefore) {
+            mAfter.add(new Item(item));
+        }
+    }
+
+    private void add(int index) {
+        mAfter.add(index, new Item(true));
+    }
+
+    private void remove(int index) {
+        mAfter.remove(index);
+    }
+
+    private void move(int from, int to) {
+        mAfter.add(to, mAfter.remove(from));
+    }
+
+    private void check() {
+        check(true);
+    }
+
+    private void check(boolean detectMoves) {
+        final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return mBefore.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return mAfter.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemIndex, int newItemIndex) {
+                return mBefore.get(oldItemIndex).id == mAfter.get(newItemIndex).id;
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemIndex, int newItemIndex) {
+                return mBefore.get(oldItemIndex).newItem == mAfter.get(newItemIndex).newItem;
+            }
+        }, detectMoves);
+        final List<Item> applied = new ArrayList<Item>();
+        for (Item item : mBefore) {
+            applied.add(new Item(item));
+        }
+        result.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    applied.add(position, null);
+                }
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    applied.remove(position);
+                }
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                applied.add(toPosition, applied.remove(fromPosition));
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                for (int i = 0; i < count; i++) {
+                    applied.get(position + i).changed = true;
+                }
+            }
+        });
+        assertEquals(mAfter.size(), applied.size());
+        for (int i = 0; i < mAfter.size(); i++) {
+            final Item expected = mAfter.get(i);
+            final Item item = applied.get(i);
+            if (item == null) {
+                // inserted items must not exist in the old list
+                for (Item old : mBefore) {
+                    assertFalse("item " + expected.id + " was re-inserted instead of moved",
+                            detectMoves && old.id == expected.id);
+                }
+                continue;
+            }
+            assertEquals("item at " + i, expected.id, item.id);
+            assertEquals("change of item at " + i, expected.newItem != item.newItem,
+                    item.changed);
+        }
+    }
+
+    static class Item {
+        final int id;
+        boolean newItem;
+        boolean changed;
+
+        Item(boolean newItem) {
+            id = sId++;
+            this.newItem = newItem;
+        }
+
+        Item(Item other) {
+            id = other.id;
+            newItem = other.newItem;
+        }
+    }
+}
@@ -148,6 +148,199 @@ public class SortedListTest extends TestCase {
         assertTrue(mAdditions.contains(new Pair(0, 5)));
     }
 
+    public void testAddAllToEmpty() {
+        Item[] items = new Item[]{new Item(3), new Item(1), new Item(2)};
+        mList.addAll(items);
+        assertEquals(3, size());
+        assertEquals(1, mList.get(0).cmpField);
+        assertEquals(3, mList.get(2).cmpField);
+        assertEquals("input should not be modified", 3, items[0].cmpField);
+        assertEquals(1, mAdditions.size());
+        assertTrue(mAdditions.contains(new Pair(0, 3)));
+    }
+
+    public void testAddAllMerge() {
+        Item first = new Item(10);
+        Item last = new Item(20);
+        insert(first);
+        insert(last);
+        mAdditions.clear();
+        Item changed = new Item(first.id, first.cmpField);
+        changed.data = first.data + 1;
+        List<Item> items = new ArrayList<Item>();
+        items.add(new Item(15));
+        items.add(new Item(16));
+        items.add(changed);
+        items.add(new Item(30));
+        mList.addAll(items);
+        assertEquals(5, size());
+        assertSame(changed, mList.get(0));
+        assertEquals(15, mList.get(1).cmpField);
+        assertEquals(16, mList.get(2).cmpField);
+        assertSame(last, mList.get(3));
+        assertEquals(30, mList.get(4).cmpField);
+        assertEquals(2, mAdditions.size());
+        assertTrue(mAdditions.contains(new Pair(1, 2)));
+        assertTrue(mAdditions.contains(new Pair(4, 1)));
+        assertEquals(1, mUpdates.size());
+        assertTrue(mUpdates.contains(new Pair(0, 1)));
+    }
+
+    public void testAddAllDeduplicatesInput() {
+        Item item = new Item(5);
+        Item item2 = new Item(item.id, item.cmpField);
+        Item other = new Item(5);
+        mList.addAll(item, other, item2);
+        assertEquals(2, size());
+        assertEquals("last duplicate should win", 1, countSame(item2));
+        assertEquals(1, countSame(other));
+    }
+
+    public void testAddAllMatchesItemInEqualRange() {
+        Item old = new Item(5);
+        insert(old);
+        mAdditions.clear();
+        Item other = new Item(5);
+        Item replacement = new Item(old.id, old.cmpField);
+        replacement.data = old.data;
+        // other comes first in the input, replacement should still replace old
+        mList.addAll(other, replacement);
+        assertEquals(2, size());
+        assertEquals(1, countSame(replacement));
+        assertEquals(0, mUpdates.size());
+    }
+
+    public void testReplaceAll() {
+        Item keep = new Item(1);
+        Item remove = new Item(2);
+        Item change = new Item(3);
+        mList.addAll(keep, remove, change);
+        mAdditions.clear();
+        Item changed = new Item(change.id, change.cmpField);
+        changed.data = change.data + 1;
+        Item added = new Item(4);
+        mList.replaceAll(added, changed, keep);
+        assertEquals(3, size());
+        assertSame(keep, mList.get(0));
+        assertSame(changed, mList.get(1));
+        assertSame(added, mList.get(2));
+        assertEquals(1, mRemovals.size());
+        assertTrue(mRemovals.contains(new Pair(1, 1)));
+        assertTrue(mUpdates.contains(new Pair(1, 1)));
+        assertTrue(mAdditions.contains(new Pair(2, 1)));
+    }
+
+    public void testReplaceAllWithEmpty() {
+        mList.addAll(new Item(1), new Item(2));
+        mList.replaceAll(new ArrayList<Item>());
+        assertEquals(0, size());
+        assertTrue(mRemovals.contains(new Pair(0, 2)));
+    }
+
+    public void testReplaceAllRandom() throws Throwable {
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i++) {
+            replaceAllRandomTest(random);
+        }
+    }
+
+    private void replaceAllRandomTest(Random random) {
+        // replays the events on a copy of the old list to make sure they are consistent
+        final List<Item> replay = new ArrayList<Item>();
+        final SortedList<Item> list = new SortedList<Item>(Item.class,
+                new SortedList.Callback<Item>() {
+                    @Override
+                    public int compare(Item o1, Item o2) {
+                        return mCallback.compare(o1, o2);
+                    }
+
+                    @Override
+                    public void onInserted(int position, int count) {
+                        for (int i = 0; i < count; i++) {
+                            replay.add(position, null);
+                        }
+                    }
+
+                    @Override
+                    public void onRemoved(int position, int count) {
+                        for (int i = 0; i < count; i++) {
+                            replay.remove(position);
+                        }
+                    }
+
+                    @Override
+                    public void onMoved(int fromPosition, int toPosition) {
+                        fail("replaceAll should not dispatch moves");
+                    }
+
+                    @Override
+                    public void onChanged(int position, int count) {
+                        for (int i = 0; i < count; i++) {
+                            replay.set(position + i, null);
+                        }
+                    }
+
+                    @Override
+                    public boolean areContentsTheSame(Item oldItem, Item newItem) {
+                        return mCallback.areContentsTheSame(oldItem, newItem);
+                    }
+
+                    @Override
+                    public boolean areItemsTheSame(Item item1, Item item2) {
+                        return mCallback.areItemsTheSame(item1, item2);
+                    }
+                });
+        List<Item> oldItems = new ArrayList<Item>();
+        for (int i = random.nextInt(50); i > 0; i--) {
+            oldItems.add(new Item(random.nextInt(20)));
+        }
+        list.addAll(oldItems);
+        List<Item> newItems = new ArrayList<Item>();
+        for (Item item : oldItems) {
+            int action = random.nextInt(4);
+            if (action == 0) {
+                continue; // removed
+            }
+            Item newItem = new Item(item.id, action == 3 ? random.nextInt(20) : item.cmpField);
+            newItem.data = action == 2 ? item.data + 1 : item.data;
+            newItems.add(newItem);
+        }
+        for (int i = random.nextInt(20); i > 0; i--) {
+            newItems.add(new Item(random.nextInt(20)));
+        }
+        Collections.shuffle(newItems, random);
+        replay.clear();
+        for (int i = 0; i < list.size(); i++) {
+            replay.add(list.get(i));
+        }
+        list.replaceAll(newItems);
+
+        assertEquals(newItems.size(), list.size());
+        assertEquals(list.size(), replay.size());
+        for (int i = 0; i < list.size(); i++) {
+            if (i > 0) {
+                assertTrue(mCallback.compare(list.get(i - 1), list.get(i)) <= 0);
+            }
+            assertTrue(newItems.contains(list.get(i)));
+            Item unchanged = replay.get(i);
+            if (unchanged != null) {
+                // untouched by events, must be the same item with the same contents
+                assertTrue(mCallback.areItemsTheSame(unchanged, list.get(i)));
+                assertTrue(mCallback.areContentsTheSame(unchanged, list.get(i)));
+            }
+        }
+    }
+
+    private int countSame(Item item) {
+        int count = 0;
+        for (int i = 0; i < mList.size(); i++) {
+            if (mList.get(i) == item) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     public void testRandom() throws Throwable {
         Random random = new Random(System.nanoTime());
         List<Item> copy = new ArrayList<Item>();
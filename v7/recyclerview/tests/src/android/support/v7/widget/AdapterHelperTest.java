@@ -55,9 +55,12 @@ public class AdapterHelperTest extends AndroidTestCase {
 
     private StringBuilder mLog = new StringBuilder();
 
+    // payloads of update ops, recorded when dispatched since recycled ops lose their payload
+    List<Object> mDispatchedPayloads;
+
     @Override
     protected void setUp() throws Exception {
-        cleanState();
+        cleanState(true);
     }
 
     @Override
@@ -68,8 +71,9 @@ public class AdapterHelperTest extends AndroidTestCase {
         }
     }
 
-    private void cleanState() {
+    private void cleanState(boolean disableRecycler) {
         mLog.setLength(0);
+        mDispatchedPayloads = new ArrayList<Object>();
         mPreLayoutItems = new ArrayList<TestAdapter.Item>();
         mViewHolders = new ArrayList<RecyclerViewBasicTest.MockViewHolder>();
         mFirstPassUpdates = new ArrayList<AdapterHelper.UpdateOp>();
@@ -112,13 +116,15 @@ public class AdapterHelperTest extends AndroidTestCase {
             }
 
             @Override
-            public void markViewHoldersUpdated(int positionStart, int itemCount) {
+            public void markViewHoldersUpdated(int positionStart, int itemCount,
+                    Object payload) {
                 final int positionEnd = positionStart + itemCount;
                 for (ViewHolder holder : mViewHolders) {
                     if (holder.mPosition >= positionStart && holder.mPosition < positionEnd) {
                         holder.addFlags(ViewHolder.FLAG_UPDATE);
                     }
                 }
+                mDispatchedPayloads.add(payload);
             }
 
             @Override
@@ -134,6 +140,9 @@ public class AdapterHelperTest extends AndroidTestCase {
                     }
                 }
 
+                if (updateOp.cmd == AdapterHelper.UpdateOp.UPDATE) {
+                    mDispatchedPayloads.add(updateOp.payload);
+                }
                 mFirstPassUpdates.add(updateOp);
             }
 
@@ -142,6 +151,9 @@ public class AdapterHelperTest extends AndroidTestCase {
                 if (DEBUG) {
                     log("second pass:" + updateOp.toString());
                 }
+                if (updateOp.cmd == AdapterHelper.UpdateOp.UPDATE) {
+                    mDispatchedPayloads.add(updateOp.payload);
+                }
                 mSecondPassUpdates.add(updateOp);
             }
 
@@ -177,7 +189,7 @@ public class AdapterHelperTest extends AndroidTestCase {
                     }
                 }
             }
-        }, true);
+        }, disableRecycler);
     }
 
     void log(String msg) {
@@ -217,6 +229,40 @@ public class AdapterHelperTest extends AndroidTestCase {
         }
     }
 
+    public void testChangeWithPayload() {
+        setupBasic(10, 2, 3);
+        final Object payload = new Object();
+        up(0, 6, payload);
+        mv(8, 1);
+        preProcess();
+        assertTrue(mFirstPassUpdates.size() > 0);
+        for (AdapterHelper.UpdateOp op : mFirstPassUpdates) {
+            if (op.cmd == AdapterHelper.UpdateOp.UPDATE) {
+                assertSame(payload, op.payload);
+            }
+        }
+        for (AdapterHelper.UpdateOp op : mSecondPassUpdates) {
+            if (op.cmd == AdapterHelper.UpdateOp.UPDATE) {
+                assertSame(payload, op.payload);
+            }
+        }
+    }
+
+    public void testChangeWithPayloadRecycled() {
+        // op recycling clears payloads, make sure split change ops keep theirs
+        cleanState(false);
+        setupBasic(10, 2, 3);
+        final Object payload = new Object();
+        up(0, 6, payload);
+        mv(8, 1);
+        mAdapterHelper.preProcess();
+        mAdapterHelper.consumePostponedUpdates();
+        assertTrue(mDispatchedPayloads.size() > 0);
+        for (Object dispatched : mDispatchedPayloads) {
+            assertSame(payload, dispatched);
+        }
+    }
+
     public void testFindPositionOffsetInPreLayout() {
         setupBasic(50, 25, 10);
         rm(24, 5);
@@ -770,7 +816,7 @@ public class AdapterHelperTest extends AndroidTestCase {
     }
 
     public void randomTest(Random random, int opCount) {
-        cleanState();
+        cleanState(true);
         if (DEBUG) {
             log("randomTest");
         }
@@ -885,7 +931,7 @@ public class AdapterHelperTest extends AndroidTestCase {
     }
 
     AdapterHelper.UpdateOp op(int cmd, int start, int count) {
-        return new AdapterHelper.UpdateOp(cmd, start, count);
+        return new AdapterHelper.UpdateOp(cmd, start, count, null);
     }
 
     AdapterHelper.UpdateOp addOp(int start, int count) {
@@ -943,6 +989,13 @@ public class AdapterHelperTest extends AndroidTestCase {
         mTestAdapter.update(start, count);
     }
 
+    void up(int start, int count, Object payload) {
+        if (DEBUG) {
+            log("up(" + start + "," + count + "," + payload + ");");
+        }
+        mTestAdapter.update(start, count, payload);
+    }
+
     static class TestAdapter {
 
         List<Item> mItems;
@@ -967,14 +1020,14 @@ public class AdapterHelperTest extends AndroidTestCase {
                 mItems.add(index + i, item);
             }
             mAdapterHelper.addUpdateOp(new AdapterHelper.UpdateOp(
-                    AdapterHelper.UpdateOp.ADD, index, count
+                    AdapterHelper.UpdateOp.ADD, index, count, null
             ));
         }
 
         public void move(int from, int to) {
             mItems.add(to, mItems.remove(from));
             mAdapterHelper.addUpdateOp(new AdapterHelper.UpdateOp(
-                    AdapterHelper.UpdateOp.MOVE, from, to
+                    AdapterHelper.UpdateOp.MOVE, from, to, null
             ));
         }
         public void remove(int index, int count) {
@@ -982,16 +1035,20 @@ public class AdapterHelperTest extends AndroidTestCase {
                 mItems.remove(index);
             }
             mAdapterHelper.addUpdateOp(new AdapterHelper.UpdateOp(
-                    AdapterHelper.UpdateOp.REMOVE, index, count
+                    AdapterHelper.UpdateOp.REMOVE, index, count, null
             ));
         }
 
         public void update(int index, int count) {
+            update(index, count, null);
+        }
+
+        public void update(int index, int count, Object payload) {
             for (int i = 0; i < count; i++) {
                 mItems.get(index + i).update();
             }
             mAdapterHelper.addUpdateOp(new AdapterHelper.UpdateOp(
-                    AdapterHelper.UpdateOp.UPDATE, index, count
+                    AdapterHelper.UpdateOp.UPDATE, index, count, payload
             ));
         }
 
@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
@@ -400,6 +401,49 @@ public class GridLayoutManagerTest extends BaseRecyclerViewInstrumentationTest {
         assertEquals(0, ssl.getCachedSpanIndex(8, 5));
     }
 
+    public void testSpanGroupIndexCache() {
+        final int[] spanSizes = new int[5000];
+        final Random random = new Random(42);
+        for (int i = 0; i < spanSizes.length; i++) {
+            spanSizes[i] = 1 + random.nextInt(5);
+        }
+        final GridLayoutManager.SpanSizeLookup cached = new GridLayoutManager.SpanSizeLookup() {
+            @Override
+            public int getSpanSize(int position) {
+                return spanSizes[position];
+            }
+        };
+        final GridLayoutManager.SpanSizeLookup uncached = new GridLayoutManager.SpanSizeLookup() {
+            @Override
+            public int getSpanSize(int position) {
+                return spanSizes[position];
+            }
+        };
+        cached.setSpanGroupIndexCacheEnabled(true);
+        assertEquals(uncached.getSpanGroupIndex(spanSizes.length - 1, 5),
+                cached.getSpanGroupIndex(spanSizes.length - 1, 5));
+        assertTrue("checkpoints should be recorded", cached.mSpanGroupIndexCache.size() > 0);
+        for (int i = 0; i < 500; i++) {
+            final int position = random.nextInt(spanSizes.length);
+            assertEquals("group of " + position, uncached.getSpanGroupIndex(position, 5),
+                    cached.getSpanGroupIndex(position, 5));
+        }
+        // change an item in the middle, cached groups before it should stay
+        final int changed = spanSizes.length / 2;
+        spanSizes[changed] = spanSizes[changed] == 5 ? 1 : 5;
+        cached.invalidateCachesFrom(changed);
+        assertTrue(cached.mSpanGroupIndexCache.size() > 0);
+        assertTrue(cached.mSpanGroupIndexCache.keyAt(cached.mSpanGroupIndexCache.size() - 1)
+                < changed);
+        for (int i = 0; i < spanSizes.length; i += 7) {
+            assertEquals("group of " + i, uncached.getSpanGroupIndex(i, 5),
+                    cached.getSpanGroupIndex(i, 5));
+        }
+        // a different span count should not use the old checkpoints
+        assertEquals(uncached.getSpanGroupIndex(spanSizes.length - 1, 7),
+                cached.getSpanGroupIndex(spanSizes.length - 1, 7));
+    }
+
     public void testSpanGroupIndex() {
         final GridLayoutManager.SpanSizeLookup ssl
                 = new GridLayoutManager.SpanSizeLookup() {
@@ -36,6 +36,7 @@ import static android.support.v7.widget.LinearLayoutManager.HORIZONTAL;
 import static android.support.v7.widget.LinearLayoutManager.VERTICAL;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -573,6 +574,39 @@ public class LinearLayoutManagerTest extends BaseRecyclerViewInstrumentationTest
         }
     }
 
+    public void testGatherPrefetchIndices() throws Throwable {
+        setupByConfig(new Config(VERTICAL, false, false).itemCount(100), true);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                int[] indices = new int[mLayoutManager.getItemPrefetchCount()];
+                int last = mLayoutManager.findLastVisibleItemPosition();
+                assertEquals(1, mLayoutManager.gatherPrefetchIndices(0, 10,
+                        mRecyclerView.mState, indices));
+                assertEquals("next item in scroll direction should be prefetched", last + 1,
+                        indices[0]);
+                assertEquals("nothing to prefetch before the first item", 0,
+                        mLayoutManager.gatherPrefetchIndices(0, -10, mRecyclerView.mState,
+                                indices));
+            }
+        });
+    }
+
+    public void testGatherInitialPrefetchIndices() throws Throwable {
+        LinearLayoutManager llm = new LinearLayoutManager(getActivity(), HORIZONTAL, false);
+        llm.setInitialPrefetchItemCount(3);
+        int[] indices = new int[llm.getInitialPrefetchCount()];
+        assertEquals(3, llm.gatherInitialPrefetchIndices(10, indices));
+        assertTrue(Arrays.equals(new int[]{0, 1, 2}, indices));
+        assertEquals("cannot prefetch more than the adapter has", 2,
+                llm.gatherInitialPrefetchIndices(2, indices));
+        llm.setStackFromEnd(true);
+        assertEquals(3, llm.gatherInitialPrefetchIndices(10, indices));
+        assertTrue(Arrays.equals(new int[]{9, 8, 7}, indices));
+        llm.setInitialPrefetchItemCount(0);
+        assertEquals(0, llm.gatherInitialPrefetchIndices(10, indices));
+    }
+
     public void testDontRecycleChildrenOnDetach() throws Throwable {
         setupByConfig(new Config().recycleChildrenOnDetach(false), true);
         runTestOnUiThread(new Runnable() {
@@ -334,6 +334,41 @@ public class RecyclerViewAnimationsTest extends BaseRecyclerViewInstrumentationT
         mLayoutManager.waitForLayout(2);
     }
 
+    public void testChangeWithPayload() throws Throwable {
+        final int changedIndex = 3;
+        final Object payload = new Object();
+        final List<Object> receivedPayloads = new ArrayList<Object>();
+        TestAdapter testAdapter = new TestAdapter(10) {
+            @Override
+            public void onBindViewHolder(TestViewHolder holder, int position,
+                    List<Object> payloads) {
+                if (position == changedIndex) {
+                    receivedPayloads.clear();
+                    receivedPayloads.addAll(payloads);
+                }
+                super.onBindViewHolder(holder, position, payloads);
+            }
+        };
+        setupBasic(testAdapter.getItemCount(), 0, 10, testAdapter);
+        mRecyclerView.getItemAnimator().setSupportsChangeAnimations(true);
+        final RecyclerView.ViewHolder toBeChangedVH =
+                mRecyclerView.findViewHolderForLayoutPosition(changedIndex);
+        mLayoutManager.expectLayouts(1);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mTestAdapter.notifyItemChanged(changedIndex, payload);
+            }
+        });
+        mLayoutManager.waitForLayout(2);
+        RecyclerView.ViewHolder vh = mRecyclerView.findViewHolderForLayoutPosition(changedIndex);
+        assertSame("payload updates should rebind the same view holder", toBeChangedVH, vh);
+        assertFalse("payload updates should not mark the view holder as changed",
+                vh.isChanged());
+        assertEquals(1, receivedPayloads.size());
+        assertSame(payload, receivedPayloads.get(0));
+    }
+
     public void testRecycleDuringAnimations() throws Throwable {
         final AtomicInteger childCount = new AtomicInteger(0);
         final TestAdapter adapter = new TestAdapter(1000) {
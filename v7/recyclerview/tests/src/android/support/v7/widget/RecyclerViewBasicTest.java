@@ -16,6 +16,7 @@
 
 package android.support.v7.widget;
 
+import android.content.ComponentCallbacks2;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.test.AndroidTestCase;
@@ -52,6 +53,78 @@ public class RecyclerViewBasicTest extends AndroidTestCase {
         mRecyclerView.focusSearch(1);
     }
 
+    public void testPoolRunningAverages() {
+        RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        assertEquals(0, pool.getCreateRunningAverageNanos(1));
+        assertEquals(0, pool.getBindRunningAverageNanos(1));
+        assertTrue("unknown types are assumed to fit", pool.willCreateInTime(1, 0, 1));
+
+        pool.factorInCreateTime(1, 1000);
+        assertEquals(1000, pool.getCreateRunningAverageNanos(1));
+        pool.factorInCreateTime(1, 2000);
+        assertEquals(1250, pool.getCreateRunningAverageNanos(1));
+        assertEquals("types are tracked separately", 0, pool.getCreateRunningAverageNanos(2));
+
+        pool.factorInBindTime(1, 400);
+        assertEquals(400, pool.getBindRunningAverageNanos(1));
+        assertTrue(pool.willBindInTime(1, 0, 500));
+        assertFalse(pool.willBindInTime(1, 200, 500));
+        assertFalse(pool.willCreateInTime(1, 0, 1000));
+    }
+
+    public void testPoolAdaptiveSizing() {
+        RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        pool.setMaxRecycledViews(0, 1);
+        pool.setAdaptiveSizingEnabled(true);
+        pool.putRecycledView(createViewHolder());
+        pool.onRecycledViewMiss(0);
+        pool.putRecycledView(createViewHolder());
+        assertEquals("nothing was dropped, pool should not grow", 1, pool.size());
+        pool.onRecycledViewMiss(0);
+        pool.putRecycledView(createViewHolder());
+        assertEquals("pool should grow after dropping a view", 2, pool.size());
+        pool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals("trim should restore the requested size", 1, pool.size());
+    }
+
+    public void testSharedPoolClearsWhenUnused() {
+        RecyclerView.RecycledViewPool pool =
+                RecyclerView.RecycledViewPool.getSharedPool(getContext());
+        assertSame(pool, RecyclerView.RecycledViewPool.getSharedPool(getContext()));
+        assertTrue(pool.isAdaptiveSizingEnabled());
+        mRecyclerView.setAdapter(new MockAdapter(3));
+        mRecyclerView.setRecycledViewPool(pool);
+        pool.putRecycledView(createViewHolder());
+        assertEquals("not attached to a window, nothing uses the pool", 0, pool.size());
+        mRecyclerView.onAttachedToWindow();
+        pool.putRecycledView(createViewHolder());
+        assertEquals(1, pool.size());
+        mRecyclerView.setAdapter(null);
+        assertEquals("shared pool should drop its views once unused", 0, pool.size());
+    }
+
+    public void testSharedPoolClearsWhenDetachedFromWindow() {
+        RecyclerView.RecycledViewPool pool =
+                RecyclerView.RecycledViewPool.getSharedPool(getContext());
+        mRecyclerView.setRecycledViewPool(pool);
+        mRecyclerView.setAdapter(new MockAdapter(3));
+        mRecyclerView.onAttachedToWindow();
+        pool.putRecycledView(createViewHolder());
+        assertEquals(1, pool.size());
+        mRecyclerView.onDetachedFromWindow();
+        assertEquals("shared pool should drop its views once detached", 0, pool.size());
+        mRecyclerView.onAttachedToWindow();
+        pool.putRecycledView(createViewHolder());
+        assertEquals("pool should be used again after attaching", 1, pool.size());
+        mRecyclerView.onDetachedFromWindow();
+    }
+
+    private RecyclerView.ViewHolder createViewHolder() {
+        RecyclerView.ViewHolder holder = new RecyclerView.ViewHolder(new View(getContext())) {};
+        holder.mItemViewType = 0;
+        return holder;
+    }
+
     public void testLayoutWithoutAdapter() throws InterruptedException {
         MockLayoutManager layoutManager = new MockLayoutManager();
         mRecyclerView.setLayoutManager(layoutManager);